@@ -0,0 +1,303 @@
+package org.wakeup;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.provider.CalendarContract;
+import android.util.Log;
+
+import org.wakeup.engine.EventReminders;
+import org.wakeup.engine.SyntheticCalendar;
+
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.List;
+
+/**
+ * Debug-only stand-in for the calendar provider, serving a SyntheticCalendar
+ * through the CalendarContract tables the app reads: Calendars, Events/{id},
+ * Instances/when/{begin}/{end}, Reminders and an empty CalendarAlerts.
+ *
+ * QueryBudgetTest and ReminderDeliveryTest, as well as manual stress tests,
+ * route the app's queries to it with
+ * CalendarUris.setAuthority(SyntheticCalendarProvider.AUTHORITY), then size
+ * the calendar with the "generate" call, e.g.:
+ * adb shell content call --uri content://org.wakeup.synthetic_calendar --method generate
+ *     --extra eventsPerDay:i:1000 --extra calendars:i:12 --extra seed:l:7
+ *
+ * Only the selections issued by the app are understood. The data is read-only.
+ */
+public class SyntheticCalendarProvider extends ContentProvider {
+    private static final String TAG = "SyntheticCalendar";
+    public static final String AUTHORITY = "org.wakeup.synthetic_calendar";
+    public static final String METHOD_GENERATE = "generate";
+
+    private volatile SyntheticCalendar calendar;
+
+    @Override
+    public boolean onCreate() {
+        calendar = generate(Bundle.EMPTY);
+        return true;
+    }
+
+    /**
+     * Replaces the calendar. Extras: seed (long), start (long, default today 00:00),
+     * days, calendars, hiddenCalendars, eventsPerDay (int), recurringRatio (float)
+     */
+    @Override
+    public Bundle call(String method, String arg, Bundle extras) {
+        if (!METHOD_GENERATE.equals(method)) {
+            return null;
+        }
+        calendar = generate(extras != null ? extras : Bundle.EMPTY);
+        // Like a sync: observers recompute
+        getContext().getContentResolver().notifyChange(CalendarUris.events(), null);
+        getContext().getContentResolver().notifyChange(CalendarUris.instances(), null);
+        getContext().getContentResolver().notifyChange(CalendarUris.reminders(), null);
+        Bundle result = new Bundle();
+        result.putInt("instances", calendar.instanceCount());
+        result.putInt("reminders", calendar.reminderCount());
+        return result;
+    }
+
+    private static SyntheticCalendar generate(Bundle extras) {
+        Calendar today = Calendar.getInstance();
+        today.set(Calendar.HOUR_OF_DAY, 0);
+        today.set(Calendar.MINUTE, 0);
+        today.set(Calendar.SECOND, 0);
+        today.set(Calendar.MILLISECOND, 0);
+        SyntheticCalendar generated = new SyntheticCalendar(
+                new SyntheticCalendar.Workload(extras.getLong("start", today.getTimeInMillis()))
+                        .seed(extras.getLong("seed", 1))
+                        .days(extras.getInt("days", 30))
+                        .calendars(extras.getInt("calendars", 3), extras.getInt("hiddenCalendars", 0))
+                        .eventsPerDay(extras.getInt("eventsPerDay", 20))
+                        .recurringRatio(extras.getFloat("recurringRatio", 0.2f)));
+        Log.d(TAG, "Synthetic calendar: " + generated.eventCount() + " events, "
+                + generated.instanceCount() + " instances, " + generated.reminderCount() + " reminders");
+        return generated;
+    }
+
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
+            String sortOrder) {
+        SyntheticCalendar current = calendar;
+        List<String> segments = uri.getPathSegments();
+        if (segments.isEmpty()) {
+            return null;
+        }
+        switch (segments.get(0)) {
+            case "calendars":
+                return queryCalendars(current, projection, selection);
+            case "events":
+                return segments.size() == 2 ? queryEvent(current, projection, Long.parseLong(segments.get(1))) : null;
+            case "instances":
+                // instances/when/{begin}/{end}
+                return segments.size() == 4 ? queryInstances(current, projection,
+                        Long.parseLong(segments.get(2)), Long.parseLong(segments.get(3))) : null;
+            case "reminders":
+                return queryReminders(current, projection, selection, selectionArgs, sortOrder);
+            case "calendar_alerts":
+                // Not populated: the app keeps computing reminders from the instances
+                return new MatrixCursor(projection);
+            default:
+                return null;
+        }
+    }
+
+    private static Cursor queryCalendars(SyntheticCalendar current, String[] projection, String selection) {
+        boolean visibleOnly = selection != null && selection.contains(CalendarContract.Calendars.VISIBLE);
+        MatrixCursor cursor = new MatrixCursor(projection);
+        for (long calendarId = 1; calendarId <= current.calendarCount(); calendarId++) {
+            boolean visible = current.isCalendarVisible(calendarId);
+            if (visibleOnly && !visible) {
+                continue;
+            }
+            Object[] row = new Object[projection.length];
+            for (int i = 0; i < projection.length; i++) {
+                switch (projection[i]) {
+                    case CalendarContract.Calendars._ID:
+                        row[i] = calendarId;
+                        break;
+                    case CalendarContract.Calendars.CALENDAR_DISPLAY_NAME:
+                        row[i] = SyntheticCalendar.calendarName(calendarId);
+                        break;
+                    case CalendarContract.Calendars.VISIBLE:
+                        row[i] = visible ? 1 : 0;
+                        break;
+                    case CalendarContract.Calendars.SYNC_EVENTS:
+                        row[i] = 1;
+                        break;
+                    default:
+                        break;
+                }
+            }
+            cursor.addRow(row);
+        }
+        return cursor;
+    }
+
+    private static Cursor queryEvent(SyntheticCalendar current, String[] projection, long eventId) {
+        MatrixCursor cursor = new MatrixCursor(projection);
+        if (eventId < 1 || eventId > current.eventCount()) {
+            return cursor;
+        }
+        Object[] row = new Object[projection.length];
+        for (int i = 0; i < projection.length; i++) {
+            switch (projection[i]) {
+                case CalendarContract.Events._ID:
+                    row[i] = eventId;
+                    break;
+                case CalendarContract.Events.TITLE:
+                    row[i] = SyntheticCalendar.title(eventId);
+                    break;
+                case CalendarContract.Events.CALENDAR_ID:
+                    row[i] = current.calendarIdOf(eventId);
+                    break;
+                default:
+                    break;
+            }
+        }
+        cursor.addRow(row);
+        return cursor;
+    }
+
+    /**
+     * Instances of visible calendars beginning between begin and end, ordered by begin
+     */
+    private static Cursor queryInstances(SyntheticCalendar current, String[] projection, long begin, long end) {
+        MatrixCursor cursor = new MatrixCursor(projection);
+        int last = current.firstInstanceAtOrAfter(end + 1);
+        for (int index = current.firstInstanceAtOrAfter(begin); index < last; index++) {
+            long eventId = current.instanceEventIdAt(index);
+            long calendarId = current.calendarIdOf(eventId);
+            if (!current.isCalendarVisible(calendarId)) {
+                continue;
+            }
+            Object[] row = new Object[projection.length];
+            for (int i = 0; i < projection.length; i++) {
+                switch (projection[i]) {
+                    case CalendarContract.Instances.EVENT_ID:
+                        row[i] = eventId;
+                        break;
+                    case CalendarContract.Instances.TITLE:
+                        row[i] = SyntheticCalendar.title(eventId);
+                        break;
+                    case CalendarContract.Instances.BEGIN:
+                        row[i] = current.instanceBeginAt(index);
+                        break;
+                    case CalendarContract.Instances.END:
+                        row[i] = current.instanceEndAt(index);
+                        break;
+                    case CalendarContract.Instances.CALENDAR_ID:
+                        row[i] = calendarId;
+                        break;
+                    default:
+                        break;
+                }
+            }
+            cursor.addRow(row);
+        }
+        return cursor;
+    }
+
+    /**
+     * Alert reminders, of all events or of the events listed in "event_id IN (...)",
+     * optionally sorted by "minutes DESC"
+     */
+    private static Cursor queryReminders(SyntheticCalendar current, String[] projection, String selection,
+            String[] selectionArgs, String sortOrder) {
+        MatrixCursor cursor = new MatrixCursor(projection);
+        if (selectionArgs != null && selectionArgs.length > 0
+                && !String.valueOf(CalendarContract.Reminders.METHOD_ALERT).equals(selectionArgs[0])) {
+            // Every synthetic reminder is an alert
+            return cursor;
+        }
+
+        // Rows as (eventId, minutes) pairs
+        long[] eventIds;
+        int[] minutes;
+        int count = 0;
+        if (selection != null && selection.contains(" IN (")) {
+            EventReminders reminders = current.remindersByEvent();
+            eventIds = new long[(selectionArgs.length - 1) * 2];
+            minutes = new int[eventIds.length];
+            for (int a = 1; a < selectionArgs.length; a++) {
+                long eventId = Long.parseLong(selectionArgs[a]);
+                for (int r = reminders.first(eventId); r != -1; r = reminders.next(r)) {
+                    if (count == eventIds.length) {
+                        eventIds = Arrays.copyOf(eventIds, count * 2);
+                        minutes = Arrays.copyOf(minutes, count * 2);
+                    }
+                    eventIds[count] = eventId;
+                    minutes[count] = reminders.minutesAt(r);
+                    count++;
+                }
+            }
+        } else {
+            count = current.reminderCount();
+            eventIds = new long[count];
+            minutes = new int[count];
+            for (int r = 0; r < count; r++) {
+                eventIds[r] = current.reminderEventIdAt(r);
+                minutes[r] = current.reminderMinutesAt(r);
+            }
+        }
+
+        Integer[] order = new Integer[count];
+        for (int r = 0; r < count; r++) {
+            order[r] = r;
+        }
+        if (sortOrder != null && sortOrder.startsWith(CalendarContract.Reminders.MINUTES)) {
+            boolean descending = sortOrder.endsWith("DESC");
+            int[] sortMinutes = minutes;
+            Arrays.sort(order, (a, b) -> descending
+                    ? Integer.compare(sortMinutes[b], sortMinutes[a])
+                    : Integer.compare(sortMinutes[a], sortMinutes[b]));
+        }
+
+        for (int r : order) {
+            Object[] row = new Object[projection.length];
+            for (int i = 0; i < projection.length; i++) {
+                switch (projection[i]) {
+                    case CalendarContract.Reminders.EVENT_ID:
+                        row[i] = eventIds[r];
+                        break;
+                    case CalendarContract.Reminders.MINUTES:
+                        row[i] = minutes[r];
+                        break;
+                    case CalendarContract.Reminders.METHOD:
+                        row[i] = CalendarContract.Reminders.METHOD_ALERT;
+                        break;
+                    default:
+                        break;
+                }
+            }
+            cursor.addRow(row);
+        }
+        return cursor;
+    }
+
+    @Override
+    public String getType(Uri uri) {
+        return null;
+    }
+
+    @Override
+    public Uri insert(Uri uri, ContentValues values) {
+        throw new UnsupportedOperationException("Synthetic calendar is read-only");
+    }
+
+    @Override
+    public int delete(Uri uri, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException("Synthetic calendar is read-only");
+    }
+
+    @Override
+    public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException("Synthetic calendar is read-only");
+    }
+}
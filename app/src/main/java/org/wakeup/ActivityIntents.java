@@ -0,0 +1,34 @@
+package org.wakeup;
+
+import android.content.Context;
+import android.content.Intent;
+
+/**
+ * Intents of the app's activities, for the code of the monitor process.
+ *
+ * The activities are named rather than referenced: both extend
+ * AppCompatActivity, and resolving MainActivity.class or ReminderActivity.class
+ * would load the appcompat and fragment classes in a process that shows no UI.
+ * Their EXTRA_ constants can still be used, as javac inlines them.
+ */
+public final class ActivityIntents {
+    static final String MAIN_ACTIVITY = "org.wakeup.MainActivity";
+    static final String REMINDER_ACTIVITY = "org.wakeup.ReminderActivity";
+
+    private ActivityIntents() {
+    }
+
+    /**
+     * Intent opening the main screen
+     */
+    public static Intent mainActivity(Context context) {
+        return new Intent().setClassName(context, MAIN_ACTIVITY);
+    }
+
+    /**
+     * Intent showing a reminder, its extras left to the caller
+     */
+    public static Intent reminderActivity(Context context) {
+        return new Intent().setClassName(context, REMINDER_ACTIVITY);
+    }
+}
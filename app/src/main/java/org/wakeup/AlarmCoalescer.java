@@ -0,0 +1,302 @@
+package org.wakeup;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.os.PowerManager;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Single AlarmManager alarm for the app's deferred tasks that tolerate some
+ * delay, all broadcasts: keep-alive checks and the notification fallback.
+ *
+ * Each task has a deadline, before which it never runs, and a tolerance, how
+ * late it may run. Tasks wait in a priority queue ordered by their latest run
+ * time; only the head's is registered, so a wakeup runs every task whose
+ * deadline has passed, and tasks whose windows overlap share one wakeup. The
+ * service also runs the due tasks at each reminder check, as the CPU is up anyway.
+ * The reminder check alarm (ReminderScheduler), the alarm clocks
+ * (ReminderAlarms), the reminders fired by the service and the snoozed ones
+ * are not tasks: they keep their own exact alarms, delivered by the system
+ * with its wake guarantee rather than relayed from this one.
+ *
+ * The queue lives in the monitor process, owned by AlarmCoalescerReceiver, and
+ * is persisted to a small file so that a killed process does not lose it.
+ * scheduleBroadcast() and cancel() go through the receiver,
+ * so they can be called from any process; code of the monitor process can use
+ * getInstance() directly.
+ */
+public class AlarmCoalescer {
+    private static final String TAG = "AlarmCoalescer";
+    private static final String FILE_NAME = "alarm_tasks.bin";
+    private static final int REQUEST_CODE_WAKEUP = 9004;
+    // The alarm's wakelock ends with onReceive(): the relayed broadcasts are
+    // dispatched asynchronously, so the CPU is kept up this long for them
+    private static final long RELAY_WAKE_LOCK_TIMEOUT = 5000;
+
+    static final String ACTION_WAKEUP = "org.wakeup.ALARM_COALESCER_WAKEUP";
+    static final String ACTION_SCHEDULE = "org.wakeup.ALARM_COALESCER_SCHEDULE";
+    static final String ACTION_CANCEL = "org.wakeup.ALARM_COALESCER_CANCEL";
+    static final String EXTRA_KEY = "key";
+    static final String EXTRA_DEADLINE = "deadline";
+    static final String EXTRA_TOLERANCE = "tolerance";
+    static final String EXTRA_TARGET = "target";
+
+    private static AlarmCoalescer instance;
+
+    /**
+     * A deferred broadcast
+     */
+    private static final class Task {
+        final String key;
+        final long deadline;
+        final long tolerance;
+        final Intent target;
+
+        Task(String key, long deadline, long tolerance, Intent target) {
+            this.key = key;
+            this.deadline = deadline;
+            this.tolerance = tolerance;
+            this.target = target;
+        }
+
+        long latest() {
+            return deadline + tolerance;
+        }
+    }
+
+    private final AtomicFile file;
+    private final PriorityQueue<Task> queue = new PriorityQueue<>(
+            (a, b) -> Long.compare(a.latest(), b.latest()));
+    // Wakeup time registered with AlarmManager by this process, Long.MIN_VALUE if unknown
+    private long registeredWakeup = Long.MIN_VALUE;
+
+    /**
+     * Queue of the monitor process; use scheduleBroadcast() and cancel() from elsewhere
+     */
+    static synchronized AlarmCoalescer getInstance(Context context) {
+        if (instance == null) {
+            instance = new AlarmCoalescer(new File(context.getApplicationContext().getFilesDir(), FILE_NAME));
+        }
+        return instance;
+    }
+
+    private AlarmCoalescer(File file) {
+        this.file = new AtomicFile(file);
+        load();
+    }
+
+    /**
+     * Schedules a broadcast of target between deadline and deadline + tolerance,
+     * replacing the task of the same key. Can be called from any process.
+     */
+    public static void scheduleBroadcast(Context context, String key, long deadline, long tolerance,
+            Intent target) {
+        Intent intent = new Intent(context, AlarmCoalescerReceiver.class);
+        intent.setAction(ACTION_SCHEDULE);
+        intent.putExtra(EXTRA_KEY, key);
+        intent.putExtra(EXTRA_DEADLINE, deadline);
+        intent.putExtra(EXTRA_TOLERANCE, tolerance);
+        intent.putExtra(EXTRA_TARGET, target);
+        context.sendBroadcast(intent);
+    }
+
+    /**
+     * Removes the task of key, if any. Can be called from any process.
+     */
+    public static void cancel(Context context, String key) {
+        Intent intent = new Intent(context, AlarmCoalescerReceiver.class);
+        intent.setAction(ACTION_CANCEL);
+        intent.putExtra(EXTRA_KEY, key);
+        context.sendBroadcast(intent);
+    }
+
+    /**
+     * Schedules a broadcast of target between deadline and deadline + tolerance,
+     * replacing the task of key
+     */
+    synchronized void add(Context context, String key, long deadline, long tolerance, Intent target) {
+        remove(key);
+        queue.add(new Task(key, deadline, tolerance, target));
+        save();
+        updateAlarm(context);
+        Log.d(TAG, "Task " + key + " scheduled in "
+                + ((deadline - AppClock.get().currentTimeMillis()) / 1000) + " seconds");
+    }
+
+    /**
+     * Removes the task of key, if any
+     */
+    synchronized void remove(Context context, String key) {
+        if (remove(key)) {
+            save();
+            updateAlarm(context);
+        }
+    }
+
+    /**
+     * Called when the wakeup alarm fires: it is no longer registered
+     */
+    synchronized int onWakeup(Context context) {
+        registeredWakeup = Long.MIN_VALUE;
+        acquireRelayWakeLock(context);
+        return dispatchDue(context);
+    }
+
+    /**
+     * Runs every task whose deadline has passed, then registers the next wakeup.
+     * Returns the number of tasks run.
+     */
+    synchronized int dispatchDue(Context context) {
+        long currentTime = AppClock.get().currentTimeMillis();
+        List<Task> due = null;
+        for (Iterator<Task> it = queue.iterator(); it.hasNext(); ) {
+            Task task = it.next();
+            if (task.deadline <= currentTime) {
+                if (due == null) {
+                    due = new ArrayList<>();
+                }
+                due.add(task);
+                it.remove();
+            }
+        }
+        if (due != null) {
+            save();
+            for (Task task : due) {
+                dispatch(context, task);
+            }
+            MonitorMetrics.COALESCED_TASKS.add(due.size());
+        }
+        updateAlarm(context);
+        return due == null ? 0 : due.size();
+    }
+
+    private boolean remove(String key) {
+        for (Iterator<Task> it = queue.iterator(); it.hasNext(); ) {
+            if (it.next().key.equals(key)) {
+                it.remove();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Keeps the CPU awake until the tasks relayed by a wakeup have started, bounded
+     * by RELAY_WAKE_LOCK_TIMEOUT rather than released
+     */
+    private static void acquireRelayWakeLock(Context context) {
+        try {
+            PowerManager powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+            if (powerManager == null) {
+                return;
+            }
+            powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, "WakeUp::AlarmCoalescerRelay")
+                    .acquire(RELAY_WAKE_LOCK_TIMEOUT);
+        } catch (Exception e) {
+            Log.e(TAG, "Error acquiring WakeLock", e);
+        }
+    }
+
+    private void dispatch(Context context, Task task) {
+        Log.d(TAG, "Running task " + task.key);
+        try {
+            context.sendBroadcast(task.target);
+        } catch (Exception e) {
+            Log.e(TAG, "Error running task " + task.key, e);
+        }
+    }
+
+    /**
+     * Registers the head's latest run time, if it changed, or cancels the alarm if
+     * the queue is empty
+     */
+    private void updateAlarm(Context context) {
+        long wakeup = queue.isEmpty() ? Long.MAX_VALUE : queue.peek().latest();
+        if (wakeup == registeredWakeup) {
+            return;
+        }
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        if (alarmManager == null) {
+            Log.w(TAG, "AlarmManager unavailable, cannot schedule tasks");
+            return;
+        }
+        PendingIntent pendingIntent = createWakeupPendingIntent(context);
+        if (wakeup == Long.MAX_VALUE) {
+            alarmManager.cancel(pendingIntent);
+            Log.d(TAG, "No task left, wakeup cancelled");
+        } else {
+            ReminderScheduler.setExactAlarm(alarmManager, wakeup, pendingIntent);
+            Log.d(TAG, queue.size() + " task(s), next wakeup in "
+                    + ((wakeup - AppClock.get().currentTimeMillis()) / 1000) + " seconds");
+        }
+        registeredWakeup = wakeup;
+    }
+
+    private static PendingIntent createWakeupPendingIntent(Context context) {
+        Intent intent = new Intent(context, AlarmCoalescerReceiver.class);
+        intent.setAction(ACTION_WAKEUP);
+
+        return PendingIntent.getBroadcast(
+                context,
+                REQUEST_CODE_WAKEUP,
+                intent,
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+    }
+
+    private void load() {
+        try (DataInputStream in = new DataInputStream(file.openRead())) {
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String key = in.readUTF();
+                long deadline = in.readLong();
+                long tolerance = in.readLong();
+                Intent target = Intent.parseUri(in.readUTF(), Intent.URI_INTENT_SCHEME);
+                queue.add(new Task(key, deadline, tolerance, target));
+            }
+            Log.d(TAG, count + " task(s) loaded");
+        } catch (FileNotFoundException e) {
+            // First run: no task yet
+        } catch (IOException | URISyntaxException e) {
+            Log.e(TAG, "Error loading alarm queue", e);
+            queue.clear();
+        }
+    }
+
+    private void save() {
+        FileOutputStream stream = null;
+        try {
+            stream = file.startWrite();
+            DataOutputStream out = new DataOutputStream(stream);
+            out.writeInt(queue.size());
+            for (Task task : queue) {
+                out.writeUTF(task.key);
+                out.writeLong(task.deadline);
+                out.writeLong(task.tolerance);
+                // Keeps the component, action and primitive or string extras
+                out.writeUTF(task.target.toUri(Intent.URI_INTENT_SCHEME));
+            }
+            out.flush();
+            file.finishWrite(stream);
+        } catch (IOException e) {
+            Log.e(TAG, "Error saving alarm queue", e);
+            if (stream != null) {
+                file.failWrite(stream);
+            }
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package org.wakeup;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.util.Log;
+
+import androidx.core.content.IntentCompat;
+
+/**
+ * Owner of the AlarmCoalescer queue in the monitor process: receives its
+ * wakeup alarm, and the tasks scheduled or cancelled from any process.
+ */
+public class AlarmCoalescerReceiver extends BroadcastReceiver {
+    private static final String TAG = "AlarmCoalescerReceiver";
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        AlarmCoalescer coalescer = AlarmCoalescer.getInstance(context);
+        String action = intent.getAction();
+        String key = intent.getStringExtra(AlarmCoalescer.EXTRA_KEY);
+        if (AlarmCoalescer.ACTION_WAKEUP.equals(action)) {
+            MonitorMetrics.COALESCER_WAKEUPS.increment();
+            int count = coalescer.onWakeup(context);
+            Log.d(TAG, "Wakeup: " + count + " task(s) run");
+        } else if (AlarmCoalescer.ACTION_SCHEDULE.equals(action) && key != null) {
+            Intent target = IntentCompat.getParcelableExtra(intent, AlarmCoalescer.EXTRA_TARGET, Intent.class);
+            if (target == null) {
+                Log.w(TAG, "Task " + key + " without target, ignoring it");
+                return;
+            }
+            coalescer.add(context, key,
+                    intent.getLongExtra(AlarmCoalescer.EXTRA_DEADLINE, 0),
+                    intent.getLongExtra(AlarmCoalescer.EXTRA_TOLERANCE, 0),
+                    target);
+        } else if (AlarmCoalescer.ACTION_CANCEL.equals(action) && key != null) {
+            coalescer.remove(context, key);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package org.wakeup;
+
+import android.os.SystemClock;
+
+import org.wakeup.engine.Clock;
+
+/**
+ * Clock used by the scheduling code of the app: CalendarMonitorService,
+ * ServiceKeepAliveReceiver and ReminderActivity.scheduleReminder().
+ *
+ * It is the system clock unless another one is installed with set(), e.g. a
+ * VirtualClock to replay a calendar at simulated time.
+ */
+public class AppClock {
+
+    private static final Clock SYSTEM = new Clock() {
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+
+        @Override
+        public long elapsedRealtime() {
+            return SystemClock.elapsedRealtime();
+        }
+    };
+
+    private static volatile Clock clock = SYSTEM;
+
+    private AppClock() {
+    }
+
+    public static Clock get() {
+        return clock;
+    }
+
+    /**
+     * Installs clock, or the system clock again if clock is null
+     */
+    public static void set(Clock newClock) {
+        clock = newClock != null ? newClock : SYSTEM;
+    }
+}
@@ -0,0 +1,36 @@
+package org.wakeup;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.provider.CalendarContract;
+import android.util.Log;
+
+import androidx.core.content.ContextCompat;
+
+/**
+ * Receives the EVENT_REMINDER broadcast sent by the calendar provider when
+ * one of its CalendarAlerts is due, and asks CalendarMonitorService to fire it.
+ *
+ * In CalendarAlerts mode this broadcast is what wakes the service; otherwise
+ * the resulting check only finds reminders its own alarm already covers.
+ */
+public class CalendarAlertReceiver extends BroadcastReceiver {
+    private static final String TAG = "CalendarAlertReceiver";
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        if (CalendarContract.ACTION_EVENT_REMINDER.equals(intent.getAction())) {
+            Log.d(TAG, "Calendar alert received: " + intent.getData());
+
+            Intent serviceIntent = new Intent(context, CalendarMonitorService.class);
+            serviceIntent.setAction(CalendarMonitorService.ACTION_CALENDAR_ALERT);
+            try {
+                ContextCompat.startForegroundService(context, serviceIntent);
+            } catch (Exception e) {
+                // The service's backstop alarm fires the reminder a few seconds later
+                Log.e(TAG, "Error starting service for calendar alert", e);
+            }
+        }
+    }
+}
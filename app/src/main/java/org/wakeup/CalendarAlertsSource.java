@@ -0,0 +1,124 @@
+package org.wakeup;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.provider.CalendarContract;
+import android.util.Log;
+
+import org.wakeup.engine.FireTimeIndex;
+
+/**
+ * Reads upcoming reminders from the alerts the calendar provider schedules
+ * itself in CalendarContract.CalendarAlerts.
+ *
+ * The provider computes ALARM_TIME for the next day or so and broadcasts
+ * CalendarContract.ACTION_EVENT_REMINDER when one is due (see
+ * CalendarAlertReceiver). Consuming these alerts costs a single query per
+ * check, instead of deriving fire times from Instances and Reminders. Not
+ * every provider populates the table: isPopulated() compares it with the
+ * reminders computed by ReminderIndex before it is relied upon.
+ *
+ * An instance is not thread-safe.
+ */
+public class CalendarAlertsSource {
+    private static final String TAG = "CalendarAlertsSource";
+
+    // The provider schedules alerts about 24 hours ahead; reload before this runs out
+    private static final long ALERTS_WINDOW = 24 * 60 * 60 * 1000L;
+    private static final long RELOAD_MARGIN = 60 * 60 * 1000L;
+    // Reminders this close to now may not be scheduled by the provider yet
+    private static final long PROBE_MIN_DELAY = 5 * 60 * 1000L;
+    // Reminders compared by isPopulated(), well inside ALERTS_WINDOW
+    private static final long PROBE_WINDOW = 12 * 60 * 60 * 1000L;
+
+    private static final String[] PROJECTION = {
+            CalendarContract.CalendarAlerts.EVENT_ID,
+            CalendarContract.CalendarAlerts.BEGIN,
+            CalendarContract.CalendarAlerts.MINUTES,
+            CalendarContract.CalendarAlerts.ALARM_TIME
+    };
+    private static final String SELECTION = CalendarContract.CalendarAlerts.ALARM_TIME + " >= ? AND " +
+            CalendarContract.CalendarAlerts.ALARM_TIME + " <= ?";
+
+    private final long retention;
+    private final FireTimeIndex index = new FireTimeIndex();
+    private long loadedAt;
+
+    /**
+     * @param retention how far in the past alerts are still loaded
+     */
+    public CalendarAlertsSource(long retention) {
+        this.retention = retention;
+    }
+
+    public FireTimeIndex index() {
+        return index;
+    }
+
+    /**
+     * Reloads the alerts around currentTime. Returns false if the query failed,
+     * in which case the caller must fall back to ReminderIndex.
+     */
+    public boolean refresh(ContentResolver contentResolver, long currentTime) {
+        index.clear();
+        long startNanos = System.nanoTime();
+        try {
+            Cursor cursor = contentResolver.query(
+                    CalendarUris.calendarAlerts(),
+                    PROJECTION,
+                    SELECTION,
+                    new String[] { String.valueOf(currentTime - retention),
+                            String.valueOf(currentTime + ALERTS_WINDOW) },
+                    CalendarContract.CalendarAlerts.ALARM_TIME + " ASC");
+            if (cursor == null) {
+                MonitorMetrics.recordQueryError(startNanos);
+                return false;
+            }
+
+            int eventIdIndex = cursor.getColumnIndexOrThrow(CalendarContract.CalendarAlerts.EVENT_ID);
+            int beginIndex = cursor.getColumnIndexOrThrow(CalendarContract.CalendarAlerts.BEGIN);
+            int minutesIndex = cursor.getColumnIndexOrThrow(CalendarContract.CalendarAlerts.MINUTES);
+            int alarmTimeIndex = cursor.getColumnIndexOrThrow(CalendarContract.CalendarAlerts.ALARM_TIME);
+            while (cursor.moveToNext()) {
+                index.add(cursor.getLong(eventIdIndex), cursor.getLong(beginIndex),
+                        cursor.getInt(minutesIndex), cursor.getLong(alarmTimeIndex));
+            }
+            MonitorMetrics.recordQuery(startNanos, index.size());
+            cursor.close();
+            loadedAt = currentTime;
+            Log.d(TAG, index.size() + " calendar alerts loaded");
+            return true;
+        } catch (Exception e) {
+            Log.e(TAG, "Error querying calendar alerts", e);
+            MonitorMetrics.recordQueryError(startNanos);
+            index.clear();
+            return false;
+        }
+    }
+
+    /**
+     * Returns the time at which refresh() must run again, even if nothing fires before
+     */
+    public long refreshDeadline() {
+        return loadedAt + ALERTS_WINDOW - RELOAD_MARGIN;
+    }
+
+    /**
+     * Compares the loaded alerts with the reminders expected by ReminderIndex.
+     * Returns 1 if the provider scheduled all of them, 0 if some are missing,
+     * -1 if there is nothing to compare yet.
+     */
+    public int isPopulated(FireTimeIndex expected, long currentTime) {
+        int end = expected.firstIndexAtOrAfter(currentTime + PROBE_WINDOW + 1);
+        int compared = 0;
+        for (int i = expected.firstIndexAtOrAfter(currentTime + PROBE_MIN_DELAY); i < end; i++) {
+            if (!index.contains(expected.eventIdAt(i), expected.fireTimeAt(i))) {
+                Log.d(TAG, "No calendar alert for event " + expected.eventIdAt(i) + " at "
+                        + expected.fireTimeAt(i));
+                return 0;
+            }
+            compared++;
+        }
+        return compared > 0 ? 1 : -1;
+    }
+}
@@ -0,0 +1,378 @@
+package org.wakeup;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.util.Log;
+
+import org.wakeup.engine.EventReminders;
+import org.wakeup.engine.FireTimeIndex;
+import org.wakeup.engine.TopKReminders;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Process-wide holder of the upcoming reminders shown by MainActivity.
+ *
+ * The repository keeps an immutable Snapshot in memory, so opening the app
+ * displays the list without querying the provider. CalendarMonitorService
+ * publishes a new snapshot from its fire-time index after each check; when it
+ * runs in the :monitor process, the snapshot reaches the UI process through
+ * MonitorConnection. The repository only scans the calendar itself when no
+ * usable snapshot exists, e.g. before the service first ran or when the index
+ * holds too few reminders.
+ * A calendar change marks the snapshot stale until the next one is published;
+ * while a listener is registered, a scan follows shortly unless the service
+ * publishes first.
+ * Only the titles of the listed reminders are read.
+ */
+public class CalendarRepository {
+    private static final String TAG = "CalendarRepository";
+
+    // Number of upcoming reminders kept in a snapshot
+    public static final int SNAPSHOT_SIZE = 3;
+    // Events starting within this window are scanned when no snapshot is usable,
+    // to cover long reminders (e.g. an event in 20 days with a 7-day reminder)
+    private static final long SCAN_WINDOW = 30 * 24 * 60 * 60 * 1000L;
+    // Successive ends of the scan window: hours, then days, then weeks
+    static final long[] SCAN_STEPS = {
+            6 * 60 * 60 * 1000L,
+            24 * 60 * 60 * 1000L,
+            3 * 24 * 60 * 60 * 1000L,
+            7 * 24 * 60 * 60 * 1000L,
+            14 * 24 * 60 * 60 * 1000L,
+            SCAN_WINDOW
+    };
+
+    // Delay between a calendar change and the scan run for the listeners, so that
+    // bursts of changes (sync) are coalesced and the service can publish first
+    private static final long CHANGE_SCAN_DELAY = 5000;
+
+    private static CalendarRepository instance;
+
+    /**
+     * Notified on the repository thread when a new snapshot is available
+     */
+    public interface Listener {
+        void onSnapshotChanged(Snapshot snapshot);
+    }
+
+    private final ContentResolver contentResolver;
+    // Scans and calendar change notifications run on this thread
+    private final Handler handler;
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final Runnable scanRunnable = this::scan;
+    private volatile Snapshot snapshot;
+    // Incremented on each calendar change; a snapshot taken before the last change is stale
+    private volatile int changeCount;
+
+    public static synchronized CalendarRepository getInstance(Context context) {
+        if (instance == null) {
+            instance = new CalendarRepository(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Use getInstance(); tests build their own repository over a stand-in provider
+     */
+    CalendarRepository(Context context) {
+        contentResolver = context.getContentResolver();
+        HandlerThread thread = new HandlerThread("CalendarRepository", Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        handler = new Handler(thread.getLooper());
+
+        ContentObserver observer = new ContentObserver(handler) {
+            @Override
+            public void onChange(boolean selfChange, Uri uri) {
+                changeCount++;
+                if (!listeners.isEmpty()) {
+                    handler.removeCallbacks(scanRunnable);
+                    handler.postDelayed(scanRunnable, CHANGE_SCAN_DELAY);
+                }
+            }
+        };
+        try {
+            contentResolver.registerContentObserver(CalendarUris.events(), true, observer);
+            contentResolver.registerContentObserver(CalendarUris.reminders(), true, observer);
+        } catch (Exception e) {
+            Log.e(TAG, "Error registering calendar observers", e);
+        }
+    }
+
+    /**
+     * Returns the last snapshot, possibly stale, or null if none was computed yet
+     */
+    public Snapshot peek() {
+        return snapshot;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.addIfAbsent(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Makes sure an up-to-date snapshot will be available: scans the calendar
+     * in the background unless the current snapshot is still valid
+     */
+    public void refresh() {
+        if (isValid(snapshot, AppClock.get().currentTimeMillis())) {
+            return;
+        }
+        handler.removeCallbacks(scanRunnable);
+        handler.post(scanRunnable);
+    }
+
+    /**
+     * Publishes the reminders of index firing after currentTime. Called by
+     * CalendarMonitorService after each check, on its worker thread.
+     */
+    public void publish(FireTimeIndex index, long currentTime) {
+        int changes = changeCount;
+        List<UpcomingReminder> reminders = new ArrayList<>(SNAPSHOT_SIZE);
+        int size = index.size();
+        for (int i = index.firstIndexAtOrAfter(currentTime + 1); i < size && reminders.size() < SNAPSHOT_SIZE; i++) {
+            reminders.add(new UpcomingReminder(index.eventIdAt(i), null, index.beginAt(i),
+                    index.fireTimeAt(i), index.minutesAt(i)));
+        }
+        boolean complete = reminders.size() == SNAPSHOT_SIZE;
+        Snapshot current = snapshot;
+        if (isValid(current, currentTime) && (!complete || current.hasSameReminders(reminders))) {
+            // Keep the current snapshot: either nothing changed, or it comes from a wider
+            // scan and the index does not reach far enough to replace it
+            return;
+        }
+        setSnapshot(withTitles(reminders, complete, currentTime, changes));
+    }
+
+    /**
+     * Publishes a snapshot received from CalendarMonitorService in another process,
+     * see Snapshot.toBundle()
+     */
+    public void publish(Bundle bundle) {
+        handler.post(() -> {
+            // Computed by the service after its own recompute of the last calendar change
+            Snapshot remote = Snapshot.fromBundle(bundle, changeCount);
+            Snapshot current = snapshot;
+            if (current != null && current.computedAt > remote.computedAt) {
+                return;
+            }
+            setSnapshot(remote);
+        });
+    }
+
+    /**
+     * Scans the upcoming instances, for when no snapshot is usable.
+     *
+     * The window grows progressively (SCAN_STEPS) and the K earliest reminders are
+     * kept in a bounded heap while walking each slice. The scan stops as soon as no
+     * unscanned instance can hold an earlier reminder: instances beginning after the
+     * window fire at the earliest the longest reminder lead time before its end.
+     */
+    void scan() {
+        int changes = changeCount;
+        long currentTime = AppClock.get().currentTimeMillis();
+        if (isValid(snapshot, currentTime)) {
+            // Published by the service since the scan was requested
+            return;
+        }
+        ReminderQuery reminderQuery = new ReminderQuery();
+        InstanceCursorReader instanceReader = new InstanceCursorReader();
+        EventReminders eventReminders = new EventReminders();
+        TopKReminders topReminders = new TopKReminders(SNAPSHOT_SIZE);
+        try {
+            // An unreadable Reminders table leaves nothing to scan but lead times of 0
+            long maxLeadTime = Math.min(Math.max(reminderQuery.maxAlertMinutes(contentResolver), 0) * 60 * 1000L,
+                    SCAN_WINDOW);
+            long scannedUntil = currentTime - 1;
+            for (long step : SCAN_STEPS) {
+                long sliceEnd = currentTime + step;
+                if (!instanceReader.query(contentResolver, scannedUntil + 1, sliceEnd)) {
+                    break;
+                }
+                int instanceCount = instanceReader.count();
+                scannedUntil = sliceEnd;
+
+                // Reminders of the slice's events, loaded at once and joined in memory
+                reminderQuery.loadAlertReminders(contentResolver, instanceReader.eventIds(), instanceCount,
+                        eventReminders);
+                for (int row = 0; row < instanceCount; row++) {
+                    long eventId = instanceReader.eventIdAt(row);
+                    long eventStartTime = instanceReader.beginAt(row);
+                    for (int r = eventReminders.first(eventId); r != -1; r = eventReminders.next(r)) {
+                        int minutes = eventReminders.minutesAt(r);
+                        long reminderTime = FireTimeIndex.fireTime(eventStartTime, minutes);
+                        // Keep only future reminders
+                        if (reminderTime > currentTime) {
+                            topReminders.offer(eventId, eventStartTime, minutes, reminderTime);
+                        }
+                    }
+                }
+
+                if (topReminders.maxReminderTime() <= scannedUntil - maxLeadTime) {
+                    break;
+                }
+            }
+            Log.d(TAG, "Upcoming reminders scanned up to " + ((scannedUntil - currentTime) / 3600000) + " h");
+        } catch (Exception e) {
+            Log.e(TAG, "Error scanning upcoming reminders", e);
+        }
+
+        topReminders.sort();
+        List<UpcomingReminder> reminders = new ArrayList<>(topReminders.size());
+        for (int i = 0; i < topReminders.size(); i++) {
+            reminders.add(new UpcomingReminder(topReminders.eventIdAt(i), null, topReminders.beginAt(i),
+                    topReminders.reminderTimeAt(i), topReminders.minutesAt(i)));
+        }
+        // The scan covers the whole window: a shorter list is still complete
+        setSnapshot(withTitles(reminders, true, currentTime, changes));
+    }
+
+    /**
+     * Builds a snapshot, reading the titles of its few reminders only
+     */
+    private Snapshot withTitles(List<UpcomingReminder> reminders, boolean complete, long currentTime,
+            int changes) {
+        List<UpcomingReminder> titled = new ArrayList<>(reminders.size());
+        for (UpcomingReminder reminder : reminders) {
+            String title = ReminderIndex.queryTitle(contentResolver, reminder.eventId);
+            titled.add(new UpcomingReminder(reminder.eventId, title != null ? title : "",
+                    reminder.eventStartTime, reminder.reminderTime, reminder.reminderMinutes));
+        }
+        return new Snapshot(Collections.unmodifiableList(titled), complete, currentTime, changes);
+    }
+
+    /**
+     * A snapshot can be shown as is if it is complete, no calendar change happened
+     * since and none of its reminders has fired yet
+     */
+    private boolean isValid(Snapshot current, long currentTime) {
+        return current != null && current.complete && current.changeCount == changeCount
+                && (current.reminders.isEmpty() || current.reminders.get(0).reminderTime > currentTime);
+    }
+
+    private void setSnapshot(Snapshot newSnapshot) {
+        snapshot = newSnapshot;
+        for (Listener listener : listeners) {
+            listener.onSnapshotChanged(newSnapshot);
+        }
+    }
+
+    /**
+     * Immutable list of the next reminders, sorted by reminder time
+     */
+    public static final class Snapshot {
+        public final List<UpcomingReminder> reminders;
+        // False if more reminders may exist beyond those listed
+        final boolean complete;
+        public final long computedAt;
+        // CalendarRepository.changeCount when the snapshot was taken
+        final int changeCount;
+
+        Snapshot(List<UpcomingReminder> reminders, boolean complete, long computedAt, int changeCount) {
+            this.reminders = reminders;
+            this.complete = complete;
+            this.computedAt = computedAt;
+            this.changeCount = changeCount;
+        }
+
+        /**
+         * Flattens the snapshot into primitive arrays, to be sent to another process
+         */
+        Bundle toBundle() {
+            int size = reminders.size();
+            long[] eventIds = new long[size];
+            String[] titles = new String[size];
+            long[] eventStartTimes = new long[size];
+            long[] reminderTimes = new long[size];
+            int[] minutes = new int[size];
+            for (int i = 0; i < size; i++) {
+                UpcomingReminder reminder = reminders.get(i);
+                eventIds[i] = reminder.eventId;
+                titles[i] = reminder.title;
+                eventStartTimes[i] = reminder.eventStartTime;
+                reminderTimes[i] = reminder.reminderTime;
+                minutes[i] = reminder.reminderMinutes;
+            }
+            Bundle bundle = new Bundle();
+            bundle.putLongArray("eventIds", eventIds);
+            bundle.putStringArray("titles", titles);
+            bundle.putLongArray("eventStartTimes", eventStartTimes);
+            bundle.putLongArray("reminderTimes", reminderTimes);
+            bundle.putIntArray("minutes", minutes);
+            bundle.putBoolean("complete", complete);
+            bundle.putLong("computedAt", computedAt);
+            return bundle;
+        }
+
+        static Snapshot fromBundle(Bundle bundle, int changeCount) {
+            long[] eventIds = bundle.getLongArray("eventIds");
+            String[] titles = bundle.getStringArray("titles");
+            long[] eventStartTimes = bundle.getLongArray("eventStartTimes");
+            long[] reminderTimes = bundle.getLongArray("reminderTimes");
+            int[] minutes = bundle.getIntArray("minutes");
+            int size = eventIds != null ? eventIds.length : 0;
+            List<UpcomingReminder> reminders = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                reminders.add(new UpcomingReminder(eventIds[i], titles[i], eventStartTimes[i],
+                        reminderTimes[i], minutes[i]));
+            }
+            return new Snapshot(Collections.unmodifiableList(reminders), bundle.getBoolean("complete"),
+                    bundle.getLong("computedAt"), changeCount);
+        }
+
+        boolean hasSameReminders(List<UpcomingReminder> others) {
+            if (others.size() != reminders.size()) {
+                return false;
+            }
+            for (int i = 0; i < others.size(); i++) {
+                UpcomingReminder a = reminders.get(i);
+                UpcomingReminder b = others.get(i);
+                if (a.eventId != b.eventId || a.reminderTime != b.reminderTime
+                        || a.reminderMinutes != b.reminderMinutes) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Returns the reminders that have not fired at currentTime
+         */
+        public List<UpcomingReminder> upcoming(long currentTime) {
+            int first = 0;
+            while (first < reminders.size() && reminders.get(first).reminderTime <= currentTime) {
+                first++;
+            }
+            return reminders.subList(first, reminders.size());
+        }
+    }
+
+    public static final class UpcomingReminder {
+        public final long eventId;
+        public final String title;
+        public final long eventStartTime;
+        public final long reminderTime;
+        public final int reminderMinutes;
+
+        UpcomingReminder(long eventId, String title, long eventStartTime, long reminderTime, int reminderMinutes) {
+            this.eventId = eventId;
+            this.title = title;
+            this.eventStartTime = eventStartTime;
+            this.reminderTime = reminderTime;
+            this.reminderMinutes = reminderMinutes;
+        }
+    }
+}
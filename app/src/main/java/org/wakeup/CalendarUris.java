@@ -0,0 +1,51 @@
+package org.wakeup;
+
+import android.net.Uri;
+import android.provider.CalendarContract;
+
+/**
+ * CalendarContract URIs queried by the app, with a replaceable authority.
+ *
+ * By default they are the calendar provider's own URIs. Stress tests and
+ * benchmarks point them to a stand-in provider serving the same tables, such as
+ * the debug build's SyntheticCalendarProvider, with setAuthority().
+ */
+public class CalendarUris {
+    private static volatile String authority;
+
+    private CalendarUris() {
+    }
+
+    /**
+     * Routes the calendar queries to the provider of authority, or back to the
+     * calendar provider if authority is null. Running queries are not affected.
+     */
+    public static void setAuthority(String newAuthority) {
+        authority = newAuthority;
+    }
+
+    public static Uri calendars() {
+        return resolve(CalendarContract.Calendars.CONTENT_URI);
+    }
+
+    public static Uri events() {
+        return resolve(CalendarContract.Events.CONTENT_URI);
+    }
+
+    public static Uri instances() {
+        return resolve(CalendarContract.Instances.CONTENT_URI);
+    }
+
+    public static Uri reminders() {
+        return resolve(CalendarContract.Reminders.CONTENT_URI);
+    }
+
+    public static Uri calendarAlerts() {
+        return resolve(CalendarContract.CalendarAlerts.CONTENT_URI);
+    }
+
+    private static Uri resolve(Uri uri) {
+        String current = authority;
+        return current == null ? uri : uri.buildUpon().authority(current).build();
+    }
+}
@@ -0,0 +1,45 @@
+package org.wakeup;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.util.Log;
+
+/**
+ * Records in the monitor process the delivery stages reached in the UI
+ * process, i.e. ReminderActivity's first frame.
+ *
+ * MonitorMetrics are per process and only CalendarMonitorService prints them,
+ * so a sample recorded by the activity would never show in its dump. The
+ * activity sends it here instead, with the time the stage was reached.
+ */
+public class DeliveryMetricsReceiver extends BroadcastReceiver {
+    private static final String TAG = "DeliveryMetrics";
+    private static final String ACTION_FIRST_FRAME = "org.wakeup.RECORD_FIRST_FRAME";
+    private static final String EXTRA_FRAME_TIME = "frame_time";
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        if (ACTION_FIRST_FRAME.equals(intent.getAction())) {
+            long fireTime = intent.getLongExtra(ReminderActivity.EXTRA_FIRE_TIME, 0);
+            long frameTime = intent.getLongExtra(EXTRA_FRAME_TIME, 0);
+            MonitorMetrics.recordDelivery(MonitorMetrics.DELIVERY_ON_SCREEN, fireTime, frameTime);
+            Log.d(TAG, "First frame " + (frameTime - fireTime) + " ms after fire time");
+        }
+    }
+
+    /**
+     * Sends the time of the first frame of a reminder fired at fireTime; reminders
+     * without a fire time (0) are ignored
+     */
+    public static void recordFirstFrame(Context context, long fireTime, long frameTime) {
+        if (fireTime <= 0) {
+            return;
+        }
+        Intent intent = new Intent(context, DeliveryMetricsReceiver.class);
+        intent.setAction(ACTION_FIRST_FRAME);
+        intent.putExtra(ReminderActivity.EXTRA_FIRE_TIME, fireTime);
+        intent.putExtra(EXTRA_FRAME_TIME, frameTime);
+        context.sendBroadcast(intent);
+    }
+}
@@ -0,0 +1,115 @@
+package org.wakeup;
+
+import android.content.Context;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import org.wakeup.engine.FiredReminderRing;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Remembers which reminders have already been fired, so that a reminder is
+ * never shown twice, even across process restarts.
+ *
+ * Entries are kept in a FiredReminderRing of hourly buckets, so they expire
+ * after BUCKET_COUNT hours without any cleanup pass. The ring is persisted to
+ * a small file after each change.
+ */
+public class FiredReminderStore {
+    private static final String TAG = "FiredReminderStore";
+    private static final String FILE_NAME = "fired_reminders.bin";
+    private static final int FILE_VERSION = 1;
+
+    private static final long BUCKET_DURATION = 60 * 60 * 1000L; // 1 hour
+    private static final int BUCKET_COUNT = 25; // Entries are kept for at least 24 hours
+
+    private static FiredReminderStore instance;
+
+    private final AtomicFile file;
+    private final FiredReminderRing ring = new FiredReminderRing(BUCKET_DURATION, BUCKET_COUNT);
+
+    public static synchronized FiredReminderStore getInstance(Context context) {
+        if (instance == null) {
+            instance = new FiredReminderStore(new File(context.getApplicationContext().getFilesDir(), FILE_NAME));
+        }
+        return instance;
+    }
+
+    private FiredReminderStore(File file) {
+        this.file = new AtomicFile(file);
+        load();
+    }
+
+    /**
+     * Returns true if the reminder has already been fired
+     */
+    public synchronized boolean isFired(long eventId, int minutes, long fireTime) {
+        return ring.isFired(eventId, minutes, fireTime);
+    }
+
+    /**
+     * Marks the reminder as fired. Returns false if it was already fired,
+     * in which case it must not be shown again.
+     */
+    public synchronized boolean markFired(long eventId, int minutes, long fireTime) {
+        if (!ring.markFired(eventId, minutes, fireTime)) {
+            return false;
+        }
+        save();
+        return true;
+    }
+
+    private void load() {
+        try (DataInputStream in = new DataInputStream(file.openRead())) {
+            if (in.readInt() != FILE_VERSION || in.readInt() != BUCKET_COUNT) {
+                Log.w(TAG, "Incompatible fired reminders file, ignoring it");
+                return;
+            }
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                long epoch = in.readLong();
+                long[] keys = new long[in.readInt()];
+                for (int j = 0; j < keys.length; j++) {
+                    keys[j] = in.readLong();
+                }
+                ring.restoreBucket(i, epoch, keys);
+            }
+            Log.d(TAG, "Fired reminders loaded");
+        } catch (FileNotFoundException e) {
+            // First run: nothing fired yet
+        } catch (IOException e) {
+            Log.e(TAG, "Error loading fired reminders", e);
+            ring.clear();
+        }
+    }
+
+    private void save() {
+        FileOutputStream stream = null;
+        try {
+            stream = file.startWrite();
+            DataOutputStream out = new DataOutputStream(stream);
+            out.writeInt(FILE_VERSION);
+            out.writeInt(BUCKET_COUNT);
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                out.writeLong(ring.bucketEpochAt(i));
+                long[] keys = ring.bucketKeysAt(i);
+                out.writeInt(keys.length);
+                for (long key : keys) {
+                    out.writeLong(key);
+                }
+            }
+            out.flush();
+            file.finishWrite(stream);
+        } catch (IOException e) {
+            Log.e(TAG, "Error saving fired reminders", e);
+            if (stream != null) {
+                file.failWrite(stream);
+            }
+        }
+    }
+}
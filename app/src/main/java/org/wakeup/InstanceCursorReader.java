@@ -0,0 +1,108 @@
+package org.wakeup;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.CalendarContract;
+import android.util.Log;
+
+import java.util.Arrays;
+
+/**
+ * Queries the event instances of a time window and decodes them into
+ * reusable primitive buffers.
+ *
+ * Only the event ID and begin time are projected: titles are read per event,
+ * for the few reminders that actually fire or are listed. Column indices are
+ * resolved once per query instead of once per row and column. An instance is
+ * reused from one query to the next; it is not thread-safe.
+ */
+public class InstanceCursorReader {
+    private static final String TAG = "InstanceCursorReader";
+
+    private static final String[] PROJECTION = {
+            CalendarContract.Instances.EVENT_ID,
+            CalendarContract.Instances.BEGIN
+    };
+
+    // Include all visible and synced calendars
+    // CalendarContract.Instances normally includes all visible calendars,
+    // but we explicitly ensure with VISIBLE = 1
+    private static final String SELECTION = CalendarContract.Instances.BEGIN + " >= ? AND " +
+            CalendarContract.Instances.BEGIN + " <= ?";
+
+    private long[] eventIds = new long[64];
+    private long[] begins = new long[64];
+    private int count;
+
+    /**
+     * Queries the instances beginning between begin and end, ordered by begin.
+     * Returns false if the query failed.
+     */
+    public boolean query(ContentResolver contentResolver, long begin, long end) {
+        count = 0;
+        long startNanos = System.nanoTime();
+        Uri.Builder builder = CalendarUris.instances().buildUpon();
+        ContentUris.appendId(builder, begin);
+        ContentUris.appendId(builder, end);
+
+        try (Cursor cursor = contentResolver.query(
+                builder.build(),
+                PROJECTION,
+                SELECTION,
+                new String[] { String.valueOf(begin), String.valueOf(end) },
+                CalendarContract.Instances.BEGIN + " ASC")) {
+            if (cursor == null) {
+                MonitorMetrics.recordQueryError(startNanos);
+                return false;
+            }
+
+            int eventIdIndex = cursor.getColumnIndexOrThrow(CalendarContract.Instances.EVENT_ID);
+            int beginIndex = cursor.getColumnIndexOrThrow(CalendarContract.Instances.BEGIN);
+            while (cursor.moveToNext()) {
+                if (count == eventIds.length) {
+                    grow();
+                }
+                eventIds[count] = cursor.getLong(eventIdIndex);
+                begins[count] = cursor.getLong(beginIndex);
+                count++;
+            }
+            MonitorMetrics.recordQuery(startNanos, count);
+            return true;
+        } catch (Exception e) {
+            Log.e(TAG, "Error querying instances", e);
+            MonitorMetrics.recordQueryError(startNanos);
+            count = 0;
+            return false;
+        }
+    }
+
+    /**
+     * Number of instances decoded by the last query
+     */
+    public int count() {
+        return count;
+    }
+
+    /**
+     * Event IDs of the decoded instances; only the first count() entries are valid
+     */
+    public long[] eventIds() {
+        return eventIds;
+    }
+
+    public long eventIdAt(int row) {
+        return eventIds[row];
+    }
+
+    public long beginAt(int row) {
+        return begins[row];
+    }
+
+    private void grow() {
+        int capacity = eventIds.length * 2;
+        eventIds = Arrays.copyOf(eventIds, capacity);
+        begins = Arrays.copyOf(begins, capacity);
+    }
+}
@@ -5,24 +5,19 @@ import android.app.AlarmManager;
 import android.app.NotificationChannel;
 import android.app.NotificationManager;
 import android.app.PendingIntent;
-import android.content.ContentResolver;
-import android.content.ContentUris;
 import android.content.Intent;
 import android.content.pm.PackageManager;
-import android.database.Cursor;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
 import android.os.PowerManager;
-import android.provider.CalendarContract;
 import android.provider.Settings;
 import android.text.format.DateFormat;
 import android.util.Log;
 import android.view.View;
 import android.widget.Button;
-import android.widget.LinearLayout;
 import android.widget.TextView;
 import android.widget.Toast;
 
@@ -32,38 +27,58 @@ import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 
-import java.text.SimpleDateFormat;
-import java.util.ArrayList;
 import java.util.Calendar;
-import java.util.Date;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Locale;
-import java.util.Set;
 
 public class MainActivity extends AppCompatActivity {
 
     private static final int PERMISSION_REQUEST_CODE = 100;
     private static final int NOTIFICATION_PERMISSION_REQUEST_CODE = 102;
     private static final int OVERLAY_PERMISSION_REQUEST_CODE = 101;
-    private static final long UPDATE_INTERVAL = 30000; // Update every 30 seconds
+    private static final long MINUTE = 60 * 1000L;
 
-    private LinearLayout linearLayoutEvents;
+    private RecyclerView recyclerViewEvents;
+    private UpcomingReminderAdapter upcomingAdapter;
     private TextView textViewUpcomingTitle;
     private Button buttonTestReminder;
     private Handler handler;
-    private Runnable updateRunnable;
+    // Re-renders relative times ("in 12 min") at each minute change, without querying
+    private final Runnable minuteTickRunnable = new Runnable() {
+        @Override
+        public void run() {
+            long currentTime = System.currentTimeMillis();
+            CalendarRepository.Snapshot snapshot = calendarRepository.peek();
+            if (snapshot != null) {
+                displayUpcomingReminders(snapshot.upcoming(currentTime));
+            }
+            // Reloads only if a listed reminder has fired
+            calendarRepository.refresh();
+            handler.postDelayed(this, MINUTE - currentTime % MINUTE);
+        }
+    };
+    private boolean started;
+    private CalendarRepository calendarRepository;
+    private MonitorConnection monitorConnection; // Snapshots published by the :monitor process
+    private final CalendarRepository.Listener snapshotListener = snapshot ->
+            runOnUiThread(() -> displayUpcomingReminders(snapshot.upcoming(System.currentTimeMillis())));
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
 
-        linearLayoutEvents = findViewById(R.id.linearLayoutEvents);
+        recyclerViewEvents = findViewById(R.id.recyclerViewEvents);
+        upcomingAdapter = new UpcomingReminderAdapter(this);
+        recyclerViewEvents.setLayoutManager(new LinearLayoutManager(this));
+        recyclerViewEvents.setAdapter(upcomingAdapter);
         textViewUpcomingTitle = findViewById(R.id.textViewUpcomingTitle);
         buttonTestReminder = findViewById(R.id.buttonTestReminder);
         handler = new Handler(Looper.getMainLooper());
+        calendarRepository = CalendarRepository.getInstance(this);
+        monitorConnection = new MonitorConnection(this);
 
         // Configure test button
         buttonTestReminder.setOnClickListener(v -> scheduleTestReminder());
@@ -181,262 +196,43 @@ public class MainActivity extends AppCompatActivity {
         }
         Toast.makeText(this, R.string.service_started, Toast.LENGTH_SHORT).show();
 
-        // Start periodic event updates
+        // Display upcoming events
         loadUpcomingEvents();
-        startPeriodicUpdate();
-    }
-
-    private void startPeriodicUpdate() {
-        if (updateRunnable != null) {
-            handler.removeCallbacks(updateRunnable);
-        }
-        updateRunnable = new Runnable() {
-            @Override
-            public void run() {
-                loadUpcomingEvents();
-                handler.postDelayed(this, UPDATE_INTERVAL);
-            }
-        };
-        handler.postDelayed(updateRunnable, UPDATE_INTERVAL);
     }
 
+    /**
+     * Displays the upcoming reminders and keeps them current while the activity is
+     * started: reloaded on calendar changes only, relative times re-rendered every minute
+     */
     private void loadUpcomingEvents() {
-        if (ContextCompat.checkSelfPermission(this,
+        if (!started || ContextCompat.checkSelfPermission(this,
                 Manifest.permission.READ_CALENDAR) != PackageManager.PERMISSION_GRANTED) {
             return;
         }
 
-        new Thread(() -> {
-            List<EventReminder> upcomingReminders = getUpcomingReminders();
-            runOnUiThread(() -> displayUpcomingReminders(upcomingReminders));
-        }).start();
-    }
-
-    private List<EventReminder> getUpcomingReminders() {
-        List<EventReminder> reminders = new ArrayList<>();
-
-        try {
-            ContentResolver contentResolver = getContentResolver();
-            Calendar now = Calendar.getInstance();
-            long currentTime = now.getTimeInMillis();
-
-            // Check events in next 30 days to cover long
-            // reminders
-            // (e.g., an event in 20 days with a 7-day reminder)
-            long futureTime = currentTime + (30 * 24 * 60 * 60 * 1000L);
-
-            // Get all visible and synced calendars
-            Set<Long> visibleCalendarIds = getVisibleCalendarIds(contentResolver);
-            Log.d("MainActivity", "Visible calendars found: " + visibleCalendarIds.size());
-
-            Uri.Builder builder = CalendarContract.Instances.CONTENT_URI.buildUpon();
-            ContentUris.appendId(builder, currentTime);
-            ContentUris.appendId(builder, futureTime);
-
-            String[] projection = {
-                    CalendarContract.Instances.EVENT_ID,
-                    CalendarContract.Instances.TITLE,
-                    CalendarContract.Instances.BEGIN,
-                    CalendarContract.Instances.END,
-                    CalendarContract.Instances.CALENDAR_ID
-            };
-
-            // Include all visible and synced calendars
-            // CalendarContract.Instances normally includes all visible calendars,
-            // but we explicitly ensure with VISIBLE = 1
-            String selection = CalendarContract.Instances.BEGIN + " >= ? AND " +
-                    CalendarContract.Instances.BEGIN + " <= ?";
-
-            Cursor cursor = contentResolver.query(
-                    builder.build(),
-                    projection,
-                    selection,
-                    new String[] { String.valueOf(currentTime), String.valueOf(futureTime) },
-                    CalendarContract.Instances.BEGIN + " ASC");
-
-            if (cursor != null) {
-                Set<Long> foundCalendarIds = new HashSet<>();
-                // Collect ALL reminders from all events
-                while (cursor.moveToNext()) {
-                    long eventId = cursor.getLong(cursor.getColumnIndexOrThrow(CalendarContract.Instances.EVENT_ID));
-                    String title = cursor.getString(cursor.getColumnIndexOrThrow(CalendarContract.Instances.TITLE));
-                    long begin = cursor.getLong(cursor.getColumnIndexOrThrow(CalendarContract.Instances.BEGIN));
-                    long calendarId = cursor.getLong(cursor.getColumnIndexOrThrow(CalendarContract.Instances.CALENDAR_ID));
-                    foundCalendarIds.add(calendarId);
-
-                    // Check reminders for this event
-                    List<EventReminder> eventReminders = getRemindersForEvent(eventId, title, begin);
-                    reminders.addAll(eventReminders);
-                }
-                cursor.close();
-                
-                // Log for debugging: check if all visible calendars have events
-                if (visibleCalendarIds.size() > foundCalendarIds.size()) {
-                    Set<Long> missingCalendars = new HashSet<>(visibleCalendarIds);
-                    missingCalendars.removeAll(foundCalendarIds);
-                    Log.d("MainActivity", "Visible calendars without events in period: " + missingCalendars);
-                }
-            }
-
-            // Sort by reminder time (not event time) and take the first 3
-            reminders.sort((a, b) -> Long.compare(a.reminderTime, b.reminderTime));
-            if (reminders.size() > 3) {
-                reminders = reminders.subList(0, 3);
-            }
-
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-
-        return reminders;
-    }
-
-    /**
-     * Gets all visible and synced calendars from the device
-     */
-    private Set<Long> getVisibleCalendarIds(ContentResolver contentResolver) {
-        Set<Long> calendarIds = new HashSet<>();
-        try {
-            Uri calendarsUri = CalendarContract.Calendars.CONTENT_URI;
-            String[] projection = {
-                    CalendarContract.Calendars._ID,
-                    CalendarContract.Calendars.CALENDAR_DISPLAY_NAME,
-                    CalendarContract.Calendars.VISIBLE,
-                    CalendarContract.Calendars.SYNC_EVENTS
-            };
-            
-            // Get all visible and synced calendars
-            String selection = CalendarContract.Calendars.VISIBLE + " = ? AND " +
-                    CalendarContract.Calendars.SYNC_EVENTS + " = ?";
-            String[] selectionArgs = { "1", "1" };
-            
-            Cursor cursor = contentResolver.query(
-                    calendarsUri,
-                    projection,
-                    selection,
-                    selectionArgs,
-                    null);
-            
-            if (cursor != null) {
-                while (cursor.moveToNext()) {
-                    long calendarId = cursor.getLong(cursor.getColumnIndexOrThrow(CalendarContract.Calendars._ID));
-                    String displayName = cursor.getString(cursor.getColumnIndexOrThrow(CalendarContract.Calendars.CALENDAR_DISPLAY_NAME));
-                    calendarIds.add(calendarId);
-                    Log.d("MainActivity", "Calendar found: " + displayName + " (ID: " + calendarId + ")");
-                }
-                cursor.close();
-            }
-        } catch (Exception e) {
-            Log.e("MainActivity", "Error retrieving calendars", e);
-        }
-        return calendarIds;
-    }
-
-    private List<EventReminder> getRemindersForEvent(long eventId, String title, long eventStartTime) {
-        List<EventReminder> reminders = new ArrayList<>();
+        calendarRepository.addListener(snapshotListener);
+        monitorConnection.bind();
+        handler.removeCallbacks(minuteTickRunnable);
+        long currentTime = System.currentTimeMillis();
+        handler.postDelayed(minuteTickRunnable, MINUTE - currentTime % MINUTE);
 
-        try {
-            ContentResolver contentResolver = getContentResolver();
-            Calendar now = Calendar.getInstance();
-            long currentTime = now.getTimeInMillis();
-
-            Uri remindersUri = CalendarContract.Reminders.CONTENT_URI;
-            String[] projection = {
-                    CalendarContract.Reminders.MINUTES,
-                    CalendarContract.Reminders.METHOD
-            };
-            String selection = CalendarContract.Reminders.EVENT_ID + " = ? AND " +
-                    CalendarContract.Reminders.METHOD + " = ?";
-            String[] selectionArgs = {
-                    String.valueOf(eventId),
-                    String.valueOf(CalendarContract.Reminders.METHOD_ALERT)
-            };
-
-            Cursor cursor = contentResolver.query(
-                    remindersUri,
-                    projection,
-                    selection,
-                    selectionArgs,
-                    null);
-
-            if (cursor != null) {
-                while (cursor.moveToNext()) {
-                    int minutes = cursor.getInt(cursor.getColumnIndexOrThrow(CalendarContract.Reminders.MINUTES));
-                    long reminderTime = eventStartTime - (minutes * 60 * 1000L);
-
-                    // Keep only future reminders
-                    if (reminderTime > currentTime) {
-                        reminders.add(new EventReminder(title, eventStartTime, reminderTime, minutes));
-                    }
-                }
-                cursor.close();
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
+        // Show the last known reminders instantly, then refresh them in the background if needed
+        CalendarRepository.Snapshot snapshot = calendarRepository.peek();
+        if (snapshot != null) {
+            displayUpcomingReminders(snapshot.upcoming(System.currentTimeMillis()));
         }
-
-        return reminders;
+        calendarRepository.refresh();
     }
 
-    private void displayUpcomingReminders(List<EventReminder> reminders) {
-        linearLayoutEvents.removeAllViews();
-
+    private void displayUpcomingReminders(List<CalendarRepository.UpcomingReminder> reminders) {
         if (reminders.isEmpty()) {
             textViewUpcomingTitle.setVisibility(View.GONE);
-            return;
-        }
-
-        textViewUpcomingTitle.setVisibility(View.VISIBLE);
-
-        SimpleDateFormat dateFormat = new SimpleDateFormat("EEE d MMM 'at' HH:mm", Locale.getDefault());
-        SimpleDateFormat timeFormat = new SimpleDateFormat("HH:mm", Locale.getDefault());
-
-        for (EventReminder reminder : reminders) {
-            View eventView = createEventView(reminder, dateFormat, timeFormat);
-            linearLayoutEvents.addView(eventView);
-        }
-    }
-
-    private View createEventView(EventReminder reminder, SimpleDateFormat dateFormat, SimpleDateFormat timeFormat) {
-        View view = getLayoutInflater().inflate(R.layout.item_event, linearLayoutEvents, false);
-
-        TextView titleView = view.findViewById(R.id.textViewTitle);
-        TextView reminderTimeView = view.findViewById(R.id.textViewReminderTime);
-        TextView eventTimeView = view.findViewById(R.id.textViewEventTime);
-
-        // Event title
-        titleView.setText(reminder.title.isEmpty() ? getString(R.string.no_title) : reminder.title);
-
-        // Reminder time
-        Date reminderDate = new Date(reminder.reminderTime);
-        Date eventDate = new Date(reminder.eventStartTime);
-
-        Calendar now = Calendar.getInstance();
-        long currentTime = now.getTimeInMillis();
-        long diffMinutes = (reminder.reminderTime - currentTime) / (60 * 1000);
-
-        String reminderText;
-        if (diffMinutes < 0) {
-            reminderText = getString(R.string.reminder_past);
-        } else if (diffMinutes < 1) {
-            reminderText = getString(R.string.reminder_now);
-        } else if (diffMinutes < 60) {
-            reminderText = getString(R.string.reminder_at, timeFormat.format(reminderDate), diffMinutes);
-        } else if (diffMinutes < 1440) {
-            long hours = diffMinutes / 60;
-            long mins = diffMinutes % 60;
-            String minsStr = mins > 0 ? mins + "min" : "";
-            reminderText = getString(R.string.reminder_at_hours, timeFormat.format(reminderDate), hours, minsStr);
         } else {
-            reminderText = getString(R.string.reminder_on, dateFormat.format(reminderDate));
+            textViewUpcomingTitle.setVisibility(View.VISIBLE);
         }
-
-        reminderTimeView.setText(reminderText);
-
-        // Event time
-        eventTimeView.setText(getString(R.string.event_time, dateFormat.format(eventDate), reminder.reminderMinutes));
-
-        return view;
+        // Only the rows that differ from the displayed list are re-bound
+        upcomingAdapter.setCurrentTime(System.currentTimeMillis());
+        upcomingAdapter.submitList(reminders);
     }
 
     private void scheduleTestReminder() {
@@ -470,6 +266,7 @@ public class MainActivity extends AppCompatActivity {
         intent.putExtra(ReminderActivity.EXTRA_EVENT_TITLE, getString(R.string.test_reminder_title));
         intent.putExtra(ReminderActivity.EXTRA_EVENT_ID, -999L); // ID de test
         intent.putExtra(ReminderActivity.EXTRA_EVENT_START_TIME, System.currentTimeMillis() + 15000);
+        intent.putExtra(ReminderActivity.EXTRA_FIRE_TIME, System.currentTimeMillis() + 15000);
 
         PendingIntent pendingIntent = PendingIntent.getBroadcast(
                 this,
@@ -544,25 +341,21 @@ public class MainActivity extends AppCompatActivity {
     }
 
     @Override
-    protected void onDestroy() {
-        super.onDestroy();
-        if (handler != null && updateRunnable != null) {
-            handler.removeCallbacks(updateRunnable);
-        }
+    protected void onStart() {
+        super.onStart();
+        started = true;
+        // Update events when activity returns to foreground
+        loadUpcomingEvents();
     }
 
-    private static class EventReminder {
-        String title;
-        long eventStartTime;
-        long reminderTime;
-        int reminderMinutes;
-
-        EventReminder(String title, long eventStartTime, long reminderTime, int reminderMinutes) {
-            this.title = title;
-            this.eventStartTime = eventStartTime;
-            this.reminderTime = reminderTime;
-            this.reminderMinutes = reminderMinutes;
-        }
+    @Override
+    protected void onStop() {
+        super.onStop();
+        // Nothing is refreshed while the activity is not visible
+        started = false;
+        calendarRepository.removeListener(snapshotListener);
+        monitorConnection.unbind();
+        handler.removeCallbacks(minuteTickRunnable);
     }
 
     @Override
@@ -594,14 +387,4 @@ public class MainActivity extends AppCompatActivity {
             }
         }
     }
-
-    @Override
-    protected void onResume() {
-        super.onResume();
-        // Update events when activity returns to foreground
-        if (ContextCompat.checkSelfPermission(this,
-                Manifest.permission.READ_CALENDAR) == PackageManager.PERMISSION_GRANTED) {
-            loadUpcomingEvents();
-        }
-    }
 }
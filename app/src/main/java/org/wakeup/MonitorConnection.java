@@ -0,0 +1,108 @@
+package org.wakeup;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.ServiceConnection;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import android.os.Message;
+import android.os.Messenger;
+import android.os.Process;
+import android.os.RemoteException;
+import android.util.Log;
+
+/**
+ * Link between the UI and CalendarMonitorService, which runs in the :monitor
+ * process (see monitorProcess in app/build.gradle).
+ *
+ * The IPC surface is a Messenger: the client registers a reply Messenger, and
+ * the service sends it each new snapshot of the upcoming reminders, which is
+ * handed to the CalendarRepository of the UI process. The binding never starts
+ * the service: it connects once the service runs.
+ */
+public class MonitorConnection implements ServiceConnection {
+    private static final String TAG = "MonitorConnection";
+
+    // Client to service: register / unregister the reply Messenger in replyTo
+    static final int MSG_REGISTER_CLIENT = 1;
+    static final int MSG_UNREGISTER_CLIENT = 2;
+    // Service to client: snapshot of the upcoming reminders in the data Bundle,
+    // arg1 is the pid of the service
+    static final int MSG_SNAPSHOT = 3;
+
+    private final Context context;
+    private final CalendarRepository calendarRepository;
+    private final Messenger replyMessenger;
+    private Messenger service;
+    private boolean bound;
+
+    public MonitorConnection(Context context) {
+        this.context = context.getApplicationContext();
+        calendarRepository = CalendarRepository.getInstance(context);
+        replyMessenger = new Messenger(new Handler(Looper.getMainLooper(), message -> {
+            if (message.what != MSG_SNAPSHOT) {
+                return false;
+            }
+            // Same process: the repository already holds this snapshot
+            if (message.arg1 != Process.myPid()) {
+                calendarRepository.publish(message.getData());
+            }
+            return true;
+        }));
+    }
+
+    /**
+     * Starts receiving the service's snapshots, until unbind()
+     */
+    public void bind() {
+        if (bound) {
+            return;
+        }
+        try {
+            // No BIND_AUTO_CREATE: the UI must not create the service by itself
+            bound = context.bindService(new Intent(context, CalendarMonitorService.class), this, 0);
+        } catch (SecurityException e) {
+            Log.e(TAG, "Error binding to the monitor service", e);
+        }
+    }
+
+    public void unbind() {
+        if (!bound) {
+            return;
+        }
+        send(MSG_UNREGISTER_CLIENT);
+        service = null;
+        context.unbindService(this);
+        bound = false;
+    }
+
+    @Override
+    public void onServiceConnected(ComponentName name, IBinder binder) {
+        Log.d(TAG, "Connected to the monitor service");
+        service = new Messenger(binder);
+        send(MSG_REGISTER_CLIENT);
+    }
+
+    @Override
+    public void onServiceDisconnected(ComponentName name) {
+        // The :monitor process died; the binding reconnects when the service restarts
+        Log.d(TAG, "Monitor service disconnected");
+        service = null;
+    }
+
+    private void send(int what) {
+        if (service == null) {
+            return;
+        }
+        Message message = Message.obtain(null, what);
+        message.replyTo = replyMessenger;
+        try {
+            service.send(message);
+        } catch (RemoteException e) {
+            Log.w(TAG, "Monitor service unreachable", e);
+            service = null;
+        }
+    }
+}
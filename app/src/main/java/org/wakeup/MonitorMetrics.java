@@ -0,0 +1,227 @@
+package org.wakeup;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * In-process metrics of the reminder monitor: counters, gauges and
+ * fixed-bucket latency histograms.
+ *
+ * Metrics are static and registered once; recording is lock-free so it can be
+ * done from any thread, including receivers. CalendarMonitorService prints
+ * them from dump(), i.e.
+ * {@code adb shell dumpsys activity service org.wakeup/.CalendarMonitorService}.
+ * Values live as long as the process, so they must be recorded in the service's
+ * one: the UI process sends its samples through DeliveryMetricsReceiver.
+ */
+public final class MonitorMetrics {
+    // Bucket upper bounds, in milliseconds, shared by the latency histograms
+    private static final long[] LATENCY_BOUNDS_MS = { 1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 5000 };
+    private static final long[] COUNT_BOUNDS = { 0, 1, 2, 3, 5, 10, 20, 50 };
+    // Bucket upper bounds, in milliseconds, of the delays behind a reminder's fire time
+    private static final long[] DELAY_BOUNDS_MS = { 0, 100, 250, 500, 1000, 2000, 5000, 10000, 30000, 60000 };
+    // A reminder must be on screen within this delay of its fire time
+    private static final long DELIVERY_SLO_MS = 1000;
+
+    private static final List<Metric> METRICS = new ArrayList<>();
+
+    public static final Counter PROVIDER_QUERIES = register(new Counter("provider.queries"));
+    public static final Counter PROVIDER_QUERY_ERRORS = register(new Counter("provider.query_errors"));
+    public static final Counter ROWS_SCANNED = register(new Counter("provider.rows_scanned"));
+    public static final Histogram QUERY_LATENCY = register(new Histogram("provider.query_latency_ms", LATENCY_BOUNDS_MS));
+    public static final Histogram QUERIES_PER_CHECK = register(new Histogram("check.provider_queries", COUNT_BOUNDS));
+    public static final Histogram CHECK_DURATION = register(new Histogram("check.duration_ms", LATENCY_BOUNDS_MS));
+    public static final Counter CHECKS = register(new Counter("check.count"));
+    public static final Counter REMINDERS_FIRED = register(new Counter("reminders.fired"));
+    public static final Gauge INDEX_SIZE = register(new Gauge("reminders.indexed"));
+    public static final Histogram WAKE_LOCK_HELD = register(new Histogram("wakelock.held_ms", LATENCY_BOUNDS_MS));
+    public static final Counter ALARMS_SET = register(new Counter("alarms.set"));
+    public static final Counter COALESCER_WAKEUPS = register(new Counter("alarms.coalesced_wakeups"));
+    public static final Counter COALESCED_TASKS = register(new Counter("alarms.coalesced_tasks"));
+    // Delay from a reminder's fire time to each delivery stage
+    public static final Histogram DELIVERY_DETECTED = register(new Histogram("delivery.detected_ms", DELAY_BOUNDS_MS));
+    public static final Histogram DELIVERY_ALARM_SET = register(new Histogram("delivery.alarm_set_ms", DELAY_BOUNDS_MS));
+    public static final Histogram DELIVERY_RECEIVED = register(new Histogram("delivery.receiver_ms", DELAY_BOUNDS_MS));
+    public static final Histogram DELIVERY_NOTIFIED = register(new Histogram("delivery.notification_ms", DELAY_BOUNDS_MS));
+    public static final Histogram DELIVERY_ON_SCREEN = register(new Histogram("delivery.first_frame_ms", DELAY_BOUNDS_MS));
+    public static final Counter DELIVERY_SLO_MISSES = register(new Counter("delivery.slo_misses"));
+    public static final Counter SERVICE_STARTS = register(new Counter("service.starts"));
+    public static final Gauge SERVICE_CREATED_AT = register(new Gauge("service.created_at"));
+    public static final Counter SERVICE_RESTARTS = register(new Counter("service.keepalive_restarts"));
+    public static final Gauge KEEP_ALIVE_INTERVAL = register(new Gauge("service.keepalive_interval_ms"));
+
+    private MonitorMetrics() {
+    }
+
+    /**
+     * Records a provider query started at startNanos (System.nanoTime()) that returned rows rows
+     */
+    public static void recordQuery(long startNanos, int rows) {
+        PROVIDER_QUERIES.increment();
+        ROWS_SCANNED.add(rows);
+        QUERY_LATENCY.record((System.nanoTime() - startNanos) / 1000000L);
+    }
+
+    /**
+     * Records a provider query started at startNanos that failed
+     */
+    public static void recordQueryError(long startNanos) {
+        PROVIDER_QUERY_ERRORS.increment();
+        recordQuery(startNanos, 0);
+    }
+
+    /**
+     * Records the delay between a reminder's intended fire time (wall clock) and
+     * a delivery stage. Reminders without a fire time (0) are ignored.
+     */
+    public static void recordDelivery(Histogram stage, long fireTime) {
+        recordDelivery(stage, fireTime, System.currentTimeMillis());
+    }
+
+    /**
+     * Same as recordDelivery(stage, fireTime), for a stage reached at time, e.g. in another process
+     */
+    public static void recordDelivery(Histogram stage, long fireTime, long time) {
+        if (fireTime <= 0) {
+            return;
+        }
+        long delay = Math.max(0, time - fireTime);
+        stage.record(delay);
+        if (stage == DELIVERY_ON_SCREEN && delay > DELIVERY_SLO_MS) {
+            DELIVERY_SLO_MISSES.increment();
+        }
+    }
+
+    public static void dump(PrintWriter writer) {
+        writer.println("Metrics:");
+        synchronized (METRICS) {
+            for (Metric metric : METRICS) {
+                writer.print("  ");
+                writer.print(metric.name);
+                writer.print(": ");
+                metric.dump(writer);
+                writer.println();
+            }
+        }
+    }
+
+    private static <M extends Metric> M register(M metric) {
+        synchronized (METRICS) {
+            METRICS.add(metric);
+        }
+        return metric;
+    }
+
+    abstract static class Metric {
+        final String name;
+
+        Metric(String name) {
+            this.name = name;
+        }
+
+        abstract void dump(PrintWriter writer);
+    }
+
+    public static final class Counter extends Metric {
+        private final AtomicLong value = new AtomicLong();
+
+        Counter(String name) {
+            super(name);
+        }
+
+        public void increment() {
+            value.incrementAndGet();
+        }
+
+        public void add(long delta) {
+            value.addAndGet(delta);
+        }
+
+        public long get() {
+            return value.get();
+        }
+
+        @Override
+        void dump(PrintWriter writer) {
+            writer.print(value.get());
+        }
+    }
+
+    public static final class Gauge extends Metric {
+        private volatile long value;
+
+        Gauge(String name) {
+            super(name);
+        }
+
+        public void set(long value) {
+            this.value = value;
+        }
+
+        public long get() {
+            return value;
+        }
+
+        @Override
+        void dump(PrintWriter writer) {
+            writer.print(value);
+        }
+    }
+
+    /**
+     * Histogram with fixed bucket upper bounds (inclusive) and an overflow bucket
+     */
+    public static final class Histogram extends Metric {
+        private final long[] bounds;
+        private final AtomicLongArray buckets;
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong sum = new AtomicLong();
+        private final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+
+        Histogram(String name, long[] bounds) {
+            super(name);
+            this.bounds = bounds;
+            this.buckets = new AtomicLongArray(bounds.length + 1);
+        }
+
+        public void record(long value) {
+            int bucket = 0;
+            while (bucket < bounds.length && value > bounds[bucket]) {
+                bucket++;
+            }
+            buckets.incrementAndGet(bucket);
+            count.incrementAndGet();
+            sum.addAndGet(value);
+            long currentMax;
+            while (value > (currentMax = max.get()) && !max.compareAndSet(currentMax, value)) {
+                // Retry until max is at least value
+            }
+        }
+
+        public long count() {
+            return count.get();
+        }
+
+        @Override
+        void dump(PrintWriter writer) {
+            long n = count.get();
+            writer.print("count=" + n);
+            if (n == 0) {
+                return;
+            }
+            writer.print(" mean=" + (sum.get() / n) + " max=" + max.get() + " [");
+            for (int i = 0; i <= bounds.length; i++) {
+                if (i > 0) {
+                    writer.print(' ');
+                }
+                writer.print(i < bounds.length ? "<=" + bounds[i] : ">" + bounds[bounds.length - 1]);
+                writer.print(':');
+                writer.print(buckets.get(i));
+            }
+            writer.print(']');
+        }
+    }
+}
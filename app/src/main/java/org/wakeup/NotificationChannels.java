@@ -0,0 +1,135 @@
+package org.wakeup;
+
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.content.Context;
+import android.os.Build;
+import android.util.Log;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Notification channels of the app, created or migrated only when their
+ * configuration version changes.
+ *
+ * The applied version is kept in a small file outside of backups, so after the
+ * first ensure() of a process, posting a notification costs no channel work.
+ * Channels are never deleted and recreated under the same ID: Android would
+ * restore the user's settings anyway. A change of importance or vibration
+ * pattern needs a new channel ID, the old one going to OBSOLETE_CHANNEL_IDS,
+ * and a new VERSION.
+ */
+public final class NotificationChannels {
+    private static final String TAG = "NotificationChannels";
+    private static final String VERSION_FILE_NAME = "notification_channels.version";
+
+    // Bump when a channel is added, renamed or replaced
+    private static final int VERSION = 1;
+
+    public static final String SERVICE_CHANNEL_ID = "WakeUpChannel";
+    public static final String REMINDER_CHANNEL_ID = "ReminderNotificationChannel";
+    // Channels of earlier versions, deleted by the migration
+    private static final String[] OBSOLETE_CHANNEL_IDS = {};
+
+    // More intense and longer vibration pattern for Garmin watch
+    // Format: {delay, vibration1, pause1, vibration2, pause2, ...}
+    // 5 long vibrations (500ms) with short pauses (150ms), then final pause (500ms)
+    static final long[] REMINDER_VIBRATION_PATTERN = { 0, 500, 150, 500, 150, 500, 150, 500, 150, 500, 500 };
+
+    private static volatile boolean ensured;
+
+    private NotificationChannels() {
+    }
+
+    /**
+     * Creates or migrates the channels if their version changed. Only the first call
+     * of a process reads the version; the next ones return immediately.
+     */
+    public static void ensure(Context context) {
+        if (ensured || Build.VERSION.SDK_INT < Build.VERSION_CODES.O) {
+            return;
+        }
+        synchronized (NotificationChannels.class) {
+            if (ensured) {
+                return;
+            }
+            File versionFile = new File(context.getNoBackupFilesDir(), VERSION_FILE_NAME);
+            if (readVersion(versionFile) != VERSION) {
+                NotificationManager manager = context.getSystemService(NotificationManager.class);
+                if (manager == null) {
+                    Log.e(TAG, "NotificationManager unavailable, channels not created");
+                    return;
+                }
+                try {
+                    for (String channelId : OBSOLETE_CHANNEL_IDS) {
+                        manager.deleteNotificationChannel(channelId);
+                    }
+                    // Creates the missing channels; on existing ones, only updates name and description
+                    manager.createNotificationChannels(Arrays.asList(
+                            createServiceChannel(), createReminderChannel(context)));
+                } catch (Exception e) {
+                    Log.e(TAG, "Error creating notification channels", e);
+                    return;
+                }
+                writeVersion(versionFile);
+                Log.d(TAG, "Notification channels applied, version " + VERSION);
+            }
+            ensured = true;
+        }
+    }
+
+    private static NotificationChannel createServiceChannel() {
+        // IMPORTANCE_DEFAULT to display notification immediately
+        // IMPORTANCE_MIN may delay notification display
+        NotificationChannel channel = new NotificationChannel(
+                SERVICE_CHANNEL_ID,
+                "Wake Up Service",
+                NotificationManager.IMPORTANCE_DEFAULT);
+        channel.setDescription("Calendar monitoring service");
+        channel.setShowBadge(false);
+        channel.enableLights(false);
+        channel.enableVibration(false);
+        return channel;
+    }
+
+    private static NotificationChannel createReminderChannel(Context context) {
+        NotificationChannel channel = new NotificationChannel(
+                REMINDER_CHANNEL_ID,
+                context.getString(R.string.reminder_channel_name),
+                NotificationManager.IMPORTANCE_HIGH // IMPORTANCE_HIGH pour garantir la synchronisation avec Garmin
+        );
+        channel.setDescription(context.getString(R.string.reminder_channel_description));
+        channel.setShowBadge(true);
+        channel.enableLights(true);
+        channel.enableVibration(true);
+        channel.setVibrationPattern(REMINDER_VIBRATION_PATTERN);
+        return channel;
+    }
+
+    private static int readVersion(File file) {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            return in.readInt();
+        } catch (FileNotFoundException e) {
+            // First run, or data cleared
+            return 0;
+        } catch (IOException e) {
+            Log.e(TAG, "Error reading notification channels version", e);
+            return 0;
+        }
+    }
+
+    private static void writeVersion(File file) {
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+            out.writeInt(VERSION);
+        } catch (IOException e) {
+            Log.e(TAG, "Error saving notification channels version", e);
+        }
+    }
+}
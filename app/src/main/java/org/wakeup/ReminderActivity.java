@@ -13,25 +13,32 @@ import android.os.VibrationEffect;
 import android.os.Vibrator;
 import android.os.VibratorManager;
 import android.util.Log;
+import android.view.View;
+import android.view.ViewTreeObserver;
 import android.view.WindowManager;
 import android.widget.Button;
 import android.widget.TextView;
 
 import androidx.appcompat.app.AppCompatActivity;
 
-import java.util.Calendar;
+import org.wakeup.engine.ReminderPolicy;
 
 public class ReminderActivity extends AppCompatActivity {
 
     public static final String EXTRA_EVENT_TITLE = "event_title";
     public static final String EXTRA_EVENT_ID = "event_id";
     public static final String EXTRA_EVENT_START_TIME = "event_start_time";
+    // Intended fire time of the reminder, carried through every hop to measure delivery latency
+    public static final String EXTRA_FIRE_TIME = "fire_time";
+    private static final String ACTION_SNOOZE = "org.wakeup.SNOOZE";
 
     private TextView textViewEventTitle;
     private Button buttonReminder5m, buttonReminder10m, buttonReminder30m, buttonReminder1h, buttonDone;
     private String eventTitle;
     private long eventId;
     private long eventStartTime;
+    // Lead time of the reminder shown, which tells its snoozes apart from the event's other reminders
+    private int reminderMinutes;
 
     private static final String TAG = "ReminderActivity";
     private static final long VIBRATION_DURATION = 2 * 60 * 1000L; // 2 minutes maximum
@@ -65,11 +72,13 @@ public class ReminderActivity extends AppCompatActivity {
         turnScreenOn();
         
         setContentView(R.layout.activity_reminder);
+        recordFirstFrame(getIntent().getLongExtra(EXTRA_FIRE_TIME, 0));
 
         // Get data from intent
         eventTitle = getIntent().getStringExtra(EXTRA_EVENT_TITLE);
         eventId = getIntent().getLongExtra(EXTRA_EVENT_ID, -1);
         eventStartTime = getIntent().getLongExtra(EXTRA_EVENT_START_TIME, 0);
+        reminderMinutes = getIntent().getIntExtra(ReminderReceiver.EXTRA_REMINDER_MINUTES, 0);
         
         Log.d(TAG, "Titre: " + eventTitle);
         Log.d(TAG, "Event ID: " + eventId);
@@ -82,6 +91,24 @@ public class ReminderActivity extends AppCompatActivity {
         Log.d(TAG, "ReminderActivity initialized successfully");
     }
 
+    /**
+     * Records the delivery latency once the first frame is about to be drawn, in the
+     * monitor process where the metrics are dumped
+     */
+    private void recordFirstFrame(long fireTime) {
+        View decorView = getWindow().getDecorView();
+        decorView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                decorView.getViewTreeObserver().removeOnPreDrawListener(this);
+                long frameTime = System.currentTimeMillis();
+                DeliveryMetricsReceiver.recordFirstFrame(ReminderActivity.this, fireTime, frameTime);
+                Log.d(TAG, "First frame " + (frameTime - fireTime) + " ms after fire time");
+                return true;
+            }
+        });
+    }
+
     private void startVibration() {
         try {
             // Obtenir le Vibrator selon la version d'Android
@@ -209,48 +236,31 @@ public class ReminderActivity extends AppCompatActivity {
         
         // Calculate new event start time (even if event has passed)
         // Add minutes to current time for next reminder
-        long newEventStartTime = System.currentTimeMillis() + (minutes * 60 * 1000L);
+        long currentTime = AppClock.get().currentTimeMillis();
+        long newEventStartTime = currentTime + (minutes * 60 * 1000L);
         
         // Use ReminderReceiver as for other reminders
         Intent intent = new Intent(this, ReminderReceiver.class);
+        // Keeps this alarm apart from the event's alarm clocks, which share its request codes
+        intent.setAction(ACTION_SNOOZE);
         intent.putExtra(EXTRA_EVENT_TITLE, eventTitle);
         intent.putExtra(EXTRA_EVENT_ID, eventId);
         intent.putExtra(EXTRA_EVENT_START_TIME, newEventStartTime);
-        
-        // Use unique ID based on eventId and minutes to avoid conflicts
-        int requestCode = (int) (eventId + minutes + System.currentTimeMillis() % 100000);
-        
+        intent.putExtra(EXTRA_FIRE_TIME, newEventStartTime);
+        intent.putExtra(ReminderReceiver.EXTRA_REMINDER_MINUTES, reminderMinutes);
+
+        long triggerTime = newEventStartTime;
+
+        // Its own exact alarm: the user expects it on time. Snoozing the same reminder again
+        // replaces it; the event's other reminders keep their own snoozes.
         PendingIntent pendingIntent = PendingIntent.getBroadcast(
                 this,
-                requestCode,
+                ReminderPolicy.alarmRequestCode(eventId, reminderMinutes),
                 intent,
                 PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
-
-        Calendar calendar = Calendar.getInstance();
-        calendar.add(Calendar.MINUTE, minutes);
-        long triggerTime = calendar.getTimeInMillis();
-        
+        ReminderScheduler.setExactAlarm(alarmManager, triggerTime, pendingIntent);
         Log.d(TAG, "Reminder scheduled for: " + triggerTime + " (in " + minutes + " minutes)");
 
-        try {
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-                alarmManager.setExactAndAllowWhileIdle(AlarmManager.RTC_WAKEUP,
-                        triggerTime, pendingIntent);
-            } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
-                alarmManager.setExact(AlarmManager.RTC_WAKEUP,
-                        triggerTime, pendingIntent);
-            } else {
-                alarmManager.set(AlarmManager.RTC_WAKEUP,
-                        triggerTime, pendingIntent);
-            }
-            
-            Log.d(TAG, "Reminder scheduled successfully");
-        } catch (SecurityException e) {
-            Log.e(TAG, "Security error scheduling reminder", e);
-        } catch (Exception e) {
-            Log.e(TAG, "Error scheduling reminder", e);
-        }
-
         finish();
     }
 
@@ -0,0 +1,259 @@
+package org.wakeup;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import org.wakeup.engine.AlarmClockPlan;
+import org.wakeup.engine.FireTimeIndex;
+import org.wakeup.engine.ReminderPolicy;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Registers one AlarmManager.setAlarmClock() alarm per upcoming reminder, for
+ * ReminderReceiver, at the reminder's exact fire time. Which alarms are wanted
+ * is decided by AlarmClockPlan, shared with ReminderSimulator.
+ *
+ * Alarm clocks are never deferred by Doze, so a reminder reaches the screen at
+ * its fire time without the service running a check at that moment. Each alarm
+ * uses the reminder's usual request code: registering it again, or firing the
+ * same reminder through the service, replaces the alarm instead of adding one.
+ * As the request code does not include the occurrence, only the next occurrence
+ * of a recurring reminder is registered at a time.
+ *
+ * The registered alarms are persisted to a small file: alarm clocks outlive the
+ * process, so the first update() of a new process cancels those of a previous
+ * one whose reminders were edited or deleted meanwhile.
+ *
+ * An instance is not thread-safe.
+ */
+public class ReminderAlarms {
+    private static final String TAG = "ReminderAlarms";
+    private static final String FILE_NAME = "reminder_alarms.bin";
+    private static final int FILE_VERSION = 1;
+
+    private static final int MAX_ALARMS = ReminderPolicy.MAX_ALARMS;
+
+    // Registered alarms, and those wanted by the current update
+    private final AlarmClockPlan plan = new AlarmClockPlan();
+    // Alarms registered by a previous process, read from the file; null until loaded
+    private AtomicFile file;
+    private final int[] staleRequestCodes = new int[MAX_ALARMS];
+    private final long[] staleFireTimes = new long[MAX_ALARMS];
+    private int staleCount;
+
+    /**
+     * Returns true if alarm clocks can be registered (SCHEDULE_EXACT_ALARM on Android 12+)
+     */
+    public static boolean canSchedule(Context context) {
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        if (alarmManager == null) {
+            return false;
+        }
+        return Build.VERSION.SDK_INT < Build.VERSION_CODES.S || alarmManager.canScheduleExactAlarms();
+    }
+
+    /**
+     * Unique request code of a reminder, see ReminderPolicy.alarmRequestCode()
+     */
+    public static int requestCode(long eventId, int minutes) {
+        return ReminderPolicy.alarmRequestCode(eventId, minutes);
+    }
+
+    /**
+     * Creates the ReminderReceiver PendingIntent of a reminder. precise tells the
+     * receiver that the reminder has not been marked as fired yet.
+     */
+    public static PendingIntent createPendingIntent(Context context, long eventId, String title,
+            long eventStartTime, int minutes, long fireTime, boolean precise) {
+        return PendingIntent.getBroadcast(
+                context,
+                requestCode(eventId, minutes),
+                createIntent(context, eventId, title, eventStartTime, minutes, fireTime, precise),
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+    }
+
+    /**
+     * Creates the ReminderReceiver intent of a reminder, see createPendingIntent()
+     */
+    public static Intent createIntent(Context context, long eventId, String title, long eventStartTime,
+            int minutes, long fireTime, boolean precise) {
+        Intent intent = new Intent(context, ReminderReceiver.class);
+        intent.putExtra(ReminderActivity.EXTRA_EVENT_TITLE, title);
+        intent.putExtra(ReminderActivity.EXTRA_EVENT_ID, eventId);
+        intent.putExtra(ReminderActivity.EXTRA_EVENT_START_TIME, eventStartTime);
+        intent.putExtra(ReminderActivity.EXTRA_FIRE_TIME, fireTime);
+        intent.putExtra(ReminderReceiver.EXTRA_REMINDER_MINUTES, minutes);
+        intent.putExtra(ReminderReceiver.EXTRA_PRECISE, precise);
+        return intent;
+    }
+
+    /**
+     * Returns true if an alarm clock delivers this reminder
+     */
+    public boolean isScheduled(long eventId, int minutes, long fireTime) {
+        return plan.isScheduled(eventId, minutes, fireTime);
+    }
+
+    /**
+     * Registers an alarm clock for each reminder of index firing within
+     * ReminderPolicy.ALARM_HORIZON, and cancels the alarms of reminders that
+     * are no longer in the index
+     */
+    public void update(Context context, FireTimeIndex index, long currentTime, FiredReminderStore firedReminders) {
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        if (alarmManager == null) {
+            return;
+        }
+        load(context);
+        plan.plan(index, currentTime, firedReminders::isFired);
+
+        // Cancel the alarms that are still pending but no longer wanted, including those
+        // of a previous process; wanted ones are registered again below
+        for (int i = 0; i < plan.cancelledCount(); i++) {
+            cancel(context, alarmManager, plan.cancelledAt(i));
+        }
+        boolean changed = staleCount > 0;
+        for (int i = 0; i < staleCount; i++) {
+            if (staleFireTimes[i] > currentTime && !plan.isWanted(staleRequestCodes[i])) {
+                cancel(context, alarmManager, staleRequestCodes[i]);
+            }
+        }
+        staleCount = 0;
+
+        // Register new or moved alarms; a same request code replaces the previous alarm
+        int registered = 0;
+        for (int w = 0; w < plan.wantedCount(); w++) {
+            if (plan.isRegistered(w)) {
+                continue;
+            }
+            int i = plan.wantedAt(w);
+            // The title is read by the receiver, only for reminders that actually fire
+            PendingIntent pendingIntent = createPendingIntent(context, index.eventIdAt(i), null,
+                    index.beginAt(i), index.minutesAt(i), plan.wantedFireTime(w), true);
+            if (setAlarmClock(context, alarmManager, plan.wantedFireTime(w), pendingIntent)) {
+                registered++;
+            } else {
+                // Left to the service's checks
+                plan.drop(w);
+            }
+        }
+
+        changed |= plan.commit();
+        if (changed) {
+            save();
+        }
+        if (registered > 0) {
+            Log.d(TAG, registered + " alarm clocks registered, " + plan.count() + " reminders covered");
+        }
+    }
+
+    /**
+     * Cancels every registered alarm clock
+     */
+    public void cancelAll(Context context) {
+        load(context);
+        if (plan.count() == 0 && staleCount == 0) {
+            return;
+        }
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        if (alarmManager != null) {
+            for (int i = 0; i < plan.count(); i++) {
+                cancel(context, alarmManager, plan.requestCodeAt(i));
+            }
+            for (int i = 0; i < staleCount; i++) {
+                cancel(context, alarmManager, staleRequestCodes[i]);
+            }
+        }
+        plan.clear();
+        staleCount = 0;
+        save();
+    }
+
+    private static boolean setAlarmClock(Context context, AlarmManager alarmManager, long fireTime,
+            PendingIntent pendingIntent) {
+        // Shown by the system as the next alarm; opens the main screen
+        PendingIntent showIntent = PendingIntent.getActivity(
+                context, 0, ActivityIntents.mainActivity(context),
+                PendingIntent.FLAG_IMMUTABLE | PendingIntent.FLAG_UPDATE_CURRENT);
+        try {
+            alarmManager.setAlarmClock(new AlarmManager.AlarmClockInfo(fireTime, showIntent), pendingIntent);
+            MonitorMetrics.ALARMS_SET.increment();
+            return true;
+        } catch (SecurityException e) {
+            Log.e(TAG, "Security error registering alarm clock", e);
+            return false;
+        }
+    }
+
+    private static void cancel(Context context, AlarmManager alarmManager, int requestCode) {
+        PendingIntent pendingIntent = PendingIntent.getBroadcast(
+                context,
+                requestCode,
+                new Intent(context, ReminderReceiver.class),
+                PendingIntent.FLAG_NO_CREATE | PendingIntent.FLAG_IMMUTABLE);
+        if (pendingIntent != null) {
+            alarmManager.cancel(pendingIntent);
+            pendingIntent.cancel();
+        }
+    }
+
+    /**
+     * Reads the alarms registered by a previous process, on the first call
+     */
+    private void load(Context context) {
+        if (file != null) {
+            return;
+        }
+        file = new AtomicFile(new File(context.getApplicationContext().getFilesDir(), FILE_NAME));
+        try (DataInputStream in = new DataInputStream(file.openRead())) {
+            if (in.readInt() != FILE_VERSION) {
+                Log.w(TAG, "Incompatible alarms file, ignoring it");
+                return;
+            }
+            int n = Math.min(in.readInt(), MAX_ALARMS);
+            for (int i = 0; i < n; i++) {
+                staleRequestCodes[i] = in.readInt();
+                staleFireTimes[i] = in.readLong();
+            }
+            staleCount = n;
+            Log.d(TAG, n + " alarm clocks of a previous process loaded");
+        } catch (FileNotFoundException e) {
+            // First run: no alarm registered yet
+        } catch (IOException e) {
+            Log.e(TAG, "Error loading alarms", e);
+            staleCount = 0;
+        }
+    }
+
+    private void save() {
+        FileOutputStream stream = null;
+        try {
+            stream = file.startWrite();
+            DataOutputStream out = new DataOutputStream(stream);
+            out.writeInt(FILE_VERSION);
+            out.writeInt(plan.count());
+            for (int i = 0; i < plan.count(); i++) {
+                out.writeInt(plan.requestCodeAt(i));
+                out.writeLong(plan.fireTimeAt(i));
+            }
+            out.flush();
+            file.finishWrite(stream);
+        } catch (IOException e) {
+            Log.e(TAG, "Error saving alarms", e);
+            if (stream != null) {
+                file.failWrite(stream);
+            }
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package org.wakeup;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.util.Log;
+
+import org.wakeup.engine.Clock;
+import org.wakeup.engine.FireTimeIndex;
+import org.wakeup.engine.ReminderPolicy;
+
+/**
+ * Reminder check of CalendarMonitorService: brings the reminder source up to
+ * date, fires the due reminders, registers the alarm clocks of the upcoming
+ * ones and publishes them to CalendarRepository.
+ *
+ * Kept apart from the service so that the query budget and regression tests
+ * run the real check against SyntheticCalendarProvider, on a VirtualClock.
+ * An instance is confined to the thread running the checks.
+ */
+class ReminderCheck {
+    private static final String TAG = "ReminderCheck";
+
+    // Delay before retrying a provider read that failed
+    static final long CHECK_RETRY_DELAY = 15 * 60 * 1000L;
+    // How long fired reminders stay indexed: the longest grace, that of deferred checks
+    private static final long RETENTION = ReminderPolicy.INEXACT_LATE_GRACE;
+
+    private final Context context;
+    private final Clock clock;
+    private final FiredReminderStore firedReminders; // To avoid showing the same reminder multiple times
+    private final CalendarRepository calendarRepository; // Upcoming reminders shown by MainActivity
+    // Upcoming reminders by fire time
+    private final ReminderIndex reminderIndex = new ReminderIndex(RETENTION);
+    // Alerts scheduled by the calendar provider, used instead of reminderIndex once verified
+    private final CalendarAlertsSource calendarAlerts = new CalendarAlertsSource(RETENTION);
+    private volatile boolean useCalendarAlerts; // CalendarAlerts mode, see selectReminderSource()
+    private volatile boolean reminderSourceSelected;
+    // Alarm clocks delivering upcoming reminders at their exact fire time
+    private final ReminderAlarms reminderAlarms = new ReminderAlarms();
+
+    ReminderCheck(Context context, Clock clock, FiredReminderStore firedReminders,
+            CalendarRepository calendarRepository) {
+        this.context = context;
+        this.clock = clock;
+        this.firedReminders = firedReminders;
+        this.calendarRepository = calendarRepository;
+    }
+
+    /**
+     * Forces a rebuild of the computed index on the next run(), after a calendar change
+     */
+    void invalidate() {
+        reminderIndex.invalidate();
+    }
+
+    boolean usesCalendarAlerts() {
+        return useCalendarAlerts;
+    }
+
+    boolean isSourceSelected() {
+        return reminderSourceSelected;
+    }
+
+    /**
+     * Fires due reminders and returns the time at which the next check must run:
+     * the next indexed reminder, or the time the index must be extended.
+     * Returns Long.MAX_VALUE if the check failed.
+     */
+    long run() {
+        long nextCheckTime = Long.MAX_VALUE;
+        try {
+            ContentResolver contentResolver = context.getContentResolver();
+            long currentTime = clock.currentTimeMillis();
+
+            FireTimeIndex index;
+            long refreshDeadline;
+            if (useCalendarAlerts && calendarAlerts.refresh(contentResolver, currentTime)) {
+                // Zero-poll mode: a single CalendarAlerts query, woken by the provider's broadcast
+                index = calendarAlerts.index();
+                refreshDeadline = calendarAlerts.refreshDeadline();
+            } else {
+                if (useCalendarAlerts) {
+                    Log.w(TAG, "Calendar alerts unavailable, falling back to computed reminders");
+                    useCalendarAlerts = false;
+                }
+                index = reminderIndex.index();
+                if (reminderIndex.refresh(contentResolver, currentTime)) {
+                    refreshDeadline = reminderIndex.refreshDeadline();
+                } else {
+                    // Fire what the index still holds, and retry the provider later
+                    refreshDeadline = currentTime + CHECK_RETRY_DELAY;
+                }
+                if (!reminderSourceSelected) {
+                    selectReminderSource(contentResolver, currentTime);
+                }
+            }
+
+            boolean precise = ReminderAlarms.canSchedule(context);
+
+            // Fire every reminder due now, including those missed by less than the grace period,
+            // longer if the check alarm may have been deferred
+            int end = ReminderPolicy.endDue(index, currentTime);
+            for (int i = ReminderPolicy.firstDue(index, currentTime, precise); i < end; i++) {
+                long eventId = index.eventIdAt(i);
+                int minutes = index.minutesAt(i);
+                long fireTime = index.fireTimeAt(i);
+                if (ReminderPolicy.awaitsDelivery(precise && reminderAlarms.isScheduled(eventId, minutes, fireTime),
+                        fireTime, currentTime)) {
+                    // Its alarm clock delivers it, unless it is still missing after the backstop delay
+                    continue;
+                }
+                // Check if this reminder has not already been shown, even before a restart
+                if (firedReminders.markFired(eventId, minutes, fireTime)) {
+                    MonitorMetrics.recordDelivery(MonitorMetrics.DELIVERY_DETECTED, fireTime);
+                    // Show reminder activity; the title is only read for reminders that fire
+                    showReminderActivity(eventId, ReminderIndex.queryTitle(contentResolver, eventId),
+                            index.beginAt(i), minutes, fireTime);
+                    MonitorMetrics.REMINDERS_FIRED.increment();
+                    Log.d(TAG, "Reminder triggered for event " + eventId + " at " + minutes + " minutes before");
+                    // Do not use break here to allow all reminders to trigger
+                }
+            }
+
+            // Register the alarm clocks of the upcoming reminders, or drop them if exact
+            // alarms are no longer allowed
+            if (precise) {
+                reminderAlarms.update(context, index, currentTime, firedReminders);
+            } else {
+                reminderAlarms.cancelAll(context);
+            }
+
+            // Share the next reminders with MainActivity, which then needs no scan of its own
+            calendarRepository.publish(index, currentTime);
+
+            ReminderPolicy.Delivery delivery = (eventId, minutes, fireTime) -> useCalendarAlerts
+                    || (precise && reminderAlarms.isScheduled(eventId, minutes, fireTime));
+            nextCheckTime = Math.min(
+                    ReminderPolicy.nextCheckTime(index, currentTime, delivery),
+                    refreshDeadline);
+        } catch (Exception e) {
+            Log.e(TAG, "Error checking calendar", e);
+        }
+        return nextCheckTime;
+    }
+
+    /**
+     * Switches to CalendarAlerts mode if the provider has scheduled the same upcoming
+     * reminders as reminderIndex. Otherwise reminderIndex stays the reminder source.
+     */
+    private void selectReminderSource(ContentResolver contentResolver, long currentTime) {
+        if (!calendarAlerts.refresh(contentResolver, currentTime)) {
+            reminderSourceSelected = true;
+            Log.d(TAG, "Calendar alerts not readable, using computed reminders");
+            return;
+        }
+        int populated = calendarAlerts.isPopulated(reminderIndex.index(), currentTime);
+        if (populated < 0) {
+            // No upcoming reminder to compare yet: try again on the next check
+            return;
+        }
+        reminderSourceSelected = true;
+        useCalendarAlerts = populated > 0;
+        Log.d(TAG, useCalendarAlerts
+                ? "Calendar alerts populated by the provider, switching to CalendarAlerts mode"
+                : "Calendar alerts not populated by the provider, using computed reminders");
+    }
+
+    private void showReminderActivity(long eventId, String title, long eventStartTime, int minutes,
+            long fireTime) {
+        // Use same mechanism as test button: BroadcastReceiver
+        // Use AlarmManager to ensure activity displays even if screen
+        // is locked, within a second: its own exact alarm, not a coalesced task
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        if (alarmManager == null) {
+            Log.e(TAG, "AlarmManager unavailable, cannot deliver reminder for event " + eventId);
+            return;
+        }
+        // Same request code as the reminder's alarm clock, which this alarm replaces
+        PendingIntent pendingIntent = ReminderAlarms.createPendingIntent(
+                context, eventId, title, eventStartTime, minutes, fireTime, false);
+        ReminderScheduler.setExactAlarm(alarmManager, clock.currentTimeMillis() + 1000, pendingIntent);
+        MonitorMetrics.recordDelivery(MonitorMetrics.DELIVERY_ALARM_SET, fireTime);
+
+        Log.d(TAG, "Reminder scheduled for event: " + title + " (ID: " + eventId + ")");
+    }
+}
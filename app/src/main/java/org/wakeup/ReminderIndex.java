@@ -0,0 +1,135 @@
+package org.wakeup;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.database.Cursor;
+import android.provider.CalendarContract;
+import android.util.Log;
+
+import org.wakeup.engine.EventReminders;
+import org.wakeup.engine.FireTimeIndex;
+import org.wakeup.engine.IndexCoverage;
+import org.wakeup.engine.ReminderPolicy;
+
+/**
+ * Keeps a FireTimeIndex of upcoming reminders up to date from the calendar provider.
+ *
+ * Reminders of any lead time are tracked: instances are queried up to the
+ * index horizon plus the longest reminder lead time, read from the Reminders
+ * table. refresh() drops fired entries and, once the covered range runs low,
+ * appends the instances of the next time slice, with the reminders of their
+ * events only. The provider does not tell what a calendar change touched, so
+ * after one (invalidate()) the index is rebuilt, from the current time on.
+ *
+ * An instance is not thread-safe.
+ */
+public class ReminderIndex {
+    private static final String TAG = "ReminderIndex";
+
+    private final long retention;
+    private final FireTimeIndex index = new FireTimeIndex();
+    private final EventReminders reminders = new EventReminders();
+    private final ReminderQuery reminderQuery = new ReminderQuery();
+    private final InstanceCursorReader instanceReader = new InstanceCursorReader();
+    private final IndexCoverage coverage = new IndexCoverage();
+    private boolean valid;
+
+    /**
+     * @param retention how long entries stay in the index after their fire time
+     */
+    public ReminderIndex(long retention) {
+        this.retention = retention;
+    }
+
+    public FireTimeIndex index() {
+        return index;
+    }
+
+    /**
+     * Forces a full rebuild on the next refresh(), after a calendar change
+     */
+    public void invalidate() {
+        valid = false;
+    }
+
+    /**
+     * Brings the index up to date for the current time. Returns false if the
+     * provider could not be read: the index then keeps its previous entries and
+     * the next refresh() tries again.
+     */
+    public boolean refresh(ContentResolver contentResolver, long currentTime) {
+        long from = currentTime - retention;
+        if (!valid) {
+            int maxMinutes = reminderQuery.maxAlertMinutes(contentResolver);
+            if (maxMinutes < 0) {
+                Log.w(TAG, "Alert reminders unreadable, index not rebuilt");
+                return false;
+            }
+            coverage.reset(maxMinutes, from);
+            index.clear();
+            valid = true;
+            Log.d(TAG, "Rebuilding index, longest lead " + (coverage.maxLeadTime() / 60000) + " min");
+        }
+
+        if (coverage.needsExtension(currentTime)) {
+            long until = coverage.extensionEnd(currentTime);
+            if (appendInstances(contentResolver, coverage.extensionStart(), until)) {
+                coverage.extendTo(until);
+            } else {
+                // Retry from scratch on the next refresh
+                valid = false;
+            }
+        }
+        index.removeBefore(from);
+        return valid;
+    }
+
+    /**
+     * Returns the time at which refresh() must run again to extend the index,
+     * even if nothing fires before
+     */
+    public long refreshDeadline() {
+        return coverage.refreshDeadline();
+    }
+
+    /**
+     * Reads the title of an event, for the few reminders that actually fire
+     */
+    public static String queryTitle(ContentResolver contentResolver, long eventId) {
+        long startNanos = System.nanoTime();
+        try {
+            Cursor cursor = contentResolver.query(
+                    ContentUris.withAppendedId(CalendarUris.events(), eventId),
+                    new String[] { CalendarContract.Events.TITLE },
+                    null,
+                    null,
+                    null);
+            if (cursor != null) {
+                String title = cursor.moveToFirst() ? cursor.getString(0) : null;
+                MonitorMetrics.recordQuery(startNanos, cursor.getCount());
+                cursor.close();
+                return title;
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error reading event title", e);
+            MonitorMetrics.recordQueryError(startNanos);
+        }
+        return null;
+    }
+
+    private boolean appendInstances(ContentResolver contentResolver, long begin, long end) {
+        if (!instanceReader.query(contentResolver, begin, end)) {
+            return false;
+        }
+        int count = instanceReader.count();
+        if (!reminderQuery.loadAlertReminders(contentResolver, instanceReader.eventIds(), count, reminders)) {
+            return false;
+        }
+        for (int row = 0; row < count; row++) {
+            ReminderPolicy.addInstance(index, reminders, instanceReader.eventIdAt(row), instanceReader.beginAt(row));
+        }
+        MonitorMetrics.INDEX_SIZE.set(index.size());
+        Log.d(TAG, count + " instances indexed, " + index.size() + " reminders in index");
+        return true;
+    }
+}
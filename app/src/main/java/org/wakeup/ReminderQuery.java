@@ -0,0 +1,136 @@
+package org.wakeup;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.provider.CalendarContract;
+import android.util.Log;
+
+import org.wakeup.engine.EventReminders;
+import org.wakeup.engine.LongHashSet;
+
+/**
+ * Loads the alert reminders of a whole set of events in as few provider
+ * queries as possible, instead of one Reminders query per event instance.
+ *
+ * An instance keeps its working buffers between calls; it is not thread-safe.
+ */
+public class ReminderQuery {
+    private static final String TAG = "ReminderQuery";
+
+    // Stay well below SQLite's limit on the number of bound arguments per statement
+    private static final int MAX_EVENT_IDS_PER_QUERY = 500;
+
+    private static final String[] PROJECTION = {
+            CalendarContract.Reminders.EVENT_ID,
+            CalendarContract.Reminders.MINUTES
+    };
+
+    private final LongHashSet queuedEventIds = new LongHashSet();
+    private final StringBuilder selection = new StringBuilder();
+    private final String[] selectionArgs = new String[MAX_EVENT_IDS_PER_QUERY + 1];
+
+    /**
+     * Fills out with the minutes of every METHOD_ALERT reminder of the given
+     * events. eventIds may contain duplicates (recurring event instances).
+     * Returns false if a query failed, out then being incomplete.
+     */
+    public boolean loadAlertReminders(ContentResolver contentResolver, long[] eventIds, int count,
+            EventReminders out) {
+        out.clear();
+        queuedEventIds.clear();
+        boolean complete = true;
+        int argCount = 0;
+        for (int i = 0; i < count; i++) {
+            if (!queuedEventIds.add(eventIds[i])) {
+                continue;
+            }
+            selectionArgs[++argCount] = String.valueOf(eventIds[i]);
+            if (argCount == MAX_EVENT_IDS_PER_QUERY) {
+                complete &= queryChunk(contentResolver, argCount, out);
+                argCount = 0;
+            }
+        }
+        if (argCount > 0) {
+            complete &= queryChunk(contentResolver, argCount, out);
+        }
+        return complete;
+    }
+
+    /**
+     * Returns the longest METHOD_ALERT reminder lead time in minutes, 0 if there
+     * is none, -1 on error. Only the first row of the sorted result is read.
+     */
+    public int maxAlertMinutes(ContentResolver contentResolver) {
+        long startNanos = System.nanoTime();
+        try {
+            Cursor cursor = contentResolver.query(
+                    CalendarUris.reminders(),
+                    new String[] { CalendarContract.Reminders.MINUTES },
+                    CalendarContract.Reminders.METHOD + " = ?",
+                    new String[] { String.valueOf(CalendarContract.Reminders.METHOD_ALERT) },
+                    CalendarContract.Reminders.MINUTES + " DESC");
+            if (cursor != null) {
+                int maxMinutes = cursor.moveToFirst() ? cursor.getInt(0) : 0;
+                MonitorMetrics.recordQuery(startNanos, 1);
+                cursor.close();
+                return maxMinutes;
+            }
+            MonitorMetrics.recordQueryError(startNanos);
+        } catch (Exception e) {
+            Log.e(TAG, "Error querying longest reminder", e);
+            MonitorMetrics.recordQueryError(startNanos);
+        }
+        return -1;
+    }
+
+    private boolean queryChunk(ContentResolver contentResolver, int eventIdCount, EventReminders out) {
+        // Selection args: the alert method followed by the chunk of event IDs
+        selectionArgs[0] = String.valueOf(CalendarContract.Reminders.METHOD_ALERT);
+        selection.setLength(0);
+        selection.append(CalendarContract.Reminders.METHOD).append(" = ? AND ")
+                .append(CalendarContract.Reminders.EVENT_ID).append(" IN (?");
+        for (int i = 1; i < eventIdCount; i++) {
+            selection.append(",?");
+        }
+        selection.append(')');
+
+        String[] args = selectionArgs;
+        if (eventIdCount < MAX_EVENT_IDS_PER_QUERY) {
+            args = new String[eventIdCount + 1];
+            System.arraycopy(selectionArgs, 0, args, 0, args.length);
+        }
+        return query(contentResolver, selection.toString(), args, out);
+    }
+
+    /**
+     * Adds the rows of a Reminders query to out; returns false if it failed
+     */
+    private boolean query(ContentResolver contentResolver, String where, String[] whereArgs,
+            EventReminders out) {
+        long startNanos = System.nanoTime();
+        try {
+            Cursor cursor = contentResolver.query(
+                    CalendarUris.reminders(),
+                    PROJECTION,
+                    where,
+                    whereArgs,
+                    null);
+
+            if (cursor != null) {
+                int eventIdIndex = cursor.getColumnIndexOrThrow(CalendarContract.Reminders.EVENT_ID);
+                int minutesIndex = cursor.getColumnIndexOrThrow(CalendarContract.Reminders.MINUTES);
+                while (cursor.moveToNext()) {
+                    out.add(cursor.getLong(eventIdIndex), cursor.getInt(minutesIndex));
+                }
+                MonitorMetrics.recordQuery(startNanos, cursor.getCount());
+                cursor.close();
+                return true;
+            }
+            MonitorMetrics.recordQueryError(startNanos);
+        } catch (Exception e) {
+            Log.e(TAG, "Error querying reminders", e);
+            MonitorMetrics.recordQueryError(startNanos);
+        }
+        return false;
+    }
+}
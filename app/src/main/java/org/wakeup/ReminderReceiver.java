@@ -1,46 +1,109 @@
 package org.wakeup;
 
-import android.app.NotificationChannel;
 import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
-import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
 import android.util.Log;
 
 import androidx.core.app.NotificationCompat;
 
 public class ReminderReceiver extends BroadcastReceiver {
     private static final String TAG = "ReminderReceiver";
-    private static final String REMINDER_CHANNEL_ID = "ReminderNotificationChannel";
     private static final int REMINDER_NOTIFICATION_ID_BASE = 1000;
+    public static final String EXTRA_REMINDER_MINUTES = "reminder_minutes";
+    // Set on alarm clocks registered by ReminderAlarms: the reminder is not marked as fired yet
+    public static final String EXTRA_PRECISE = "precise";
+
+    // Marks alarm clock reminders as fired and reads their titles, off the main thread
+    private static Handler worker;
 
     @Override
     public void onReceive(Context context, Intent intent) {
         Log.d(TAG, "ReminderReceiver.onReceive() called");
         Log.d(TAG, "Intent: " + intent);
 
-        // Get data from intent
+        long fireTime = intent.getLongExtra(ReminderActivity.EXTRA_FIRE_TIME, 0);
+        MonitorMetrics.recordDelivery(MonitorMetrics.DELIVERY_RECEIVED, fireTime);
+
+        if (!intent.getBooleanExtra(EXTRA_PRECISE, false)) {
+            deliver(context, intent, intent.getStringExtra(ReminderActivity.EXTRA_EVENT_TITLE));
+            return;
+        }
+
+        // File write and provider query: done on the worker, the broadcast (and the
+        // alarm's wake guarantee) lasting until the reminder is delivered
+        PendingResult result = goAsync();
+        Context appContext = context.getApplicationContext();
+        worker().post(() -> {
+            try {
+                deliverAlarmClock(appContext, intent);
+            } catch (Exception e) {
+                Log.e(TAG, "Error delivering reminder", e);
+            } finally {
+                result.finish();
+            }
+        });
+    }
+
+    private static synchronized Handler worker() {
+        if (worker == null) {
+            HandlerThread thread = new HandlerThread("ReminderReceiverWorker");
+            thread.start();
+            worker = new Handler(thread.getLooper());
+        }
+        return worker;
+    }
+
+    /**
+     * Delivers a reminder of an alarm clock registered by ReminderAlarms, unless already fired
+     */
+    private void deliverAlarmClock(Context context, Intent intent) {
+        long eventId = intent.getLongExtra(ReminderActivity.EXTRA_EVENT_ID, -1);
+        long fireTime = intent.getLongExtra(ReminderActivity.EXTRA_FIRE_TIME, 0);
+        int minutes = intent.getIntExtra(EXTRA_REMINDER_MINUTES, 0);
+        // The service may already have shown it, e.g. if this alarm was late
+        if (!FiredReminderStore.getInstance(context).markFired(eventId, minutes, fireTime)) {
+            Log.d(TAG, "Reminder already fired for event " + eventId + ", ignoring");
+            return;
+        }
         String eventTitle = intent.getStringExtra(ReminderActivity.EXTRA_EVENT_TITLE);
+        if (eventTitle == null) {
+            eventTitle = ReminderIndex.queryTitle(context.getContentResolver(), eventId);
+        }
+        MonitorMetrics.REMINDERS_FIRED.increment();
+        deliver(context, intent, eventTitle);
+    }
+
+    /**
+     * Posts the reminder notification and launches ReminderActivity
+     */
+    private void deliver(Context context, Intent intent, String eventTitle) {
         long eventId = intent.getLongExtra(ReminderActivity.EXTRA_EVENT_ID, -1);
         long eventStartTime = intent.getLongExtra(ReminderActivity.EXTRA_EVENT_START_TIME, 0);
+        long fireTime = intent.getLongExtra(ReminderActivity.EXTRA_FIRE_TIME, 0);
 
         Log.d(TAG, "Titre: " + eventTitle);
         Log.d(TAG, "Event ID: " + eventId);
         Log.d(TAG, "Event Start Time: " + eventStartTime);
 
-        // Create notification channel for reminders
-        createReminderNotificationChannel(context);
+        // Channels already applied in this process: nothing to do
+        NotificationChannels.ensure(context);
 
         // Send notification that will be synced with Garmin watch
         sendReminderNotification(context, eventTitle, eventId);
+        MonitorMetrics.recordDelivery(MonitorMetrics.DELIVERY_NOTIFIED, fireTime);
 
         // Create intent to launch ReminderActivity
-        Intent reminderIntent = new Intent(context, ReminderActivity.class);
+        Intent reminderIntent = ActivityIntents.reminderActivity(context);
         reminderIntent.putExtra(ReminderActivity.EXTRA_EVENT_TITLE, eventTitle);
         reminderIntent.putExtra(ReminderActivity.EXTRA_EVENT_ID, eventId);
         reminderIntent.putExtra(ReminderActivity.EXTRA_EVENT_START_TIME, eventStartTime);
+        reminderIntent.putExtra(ReminderActivity.EXTRA_FIRE_TIME, fireTime);
+        reminderIntent.putExtra(EXTRA_REMINDER_MINUTES, intent.getIntExtra(EXTRA_REMINDER_MINUTES, 0));
         reminderIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK |
                 Intent.FLAG_ACTIVITY_CLEAR_TOP |
                 Intent.FLAG_ACTIVITY_SINGLE_TOP |
@@ -51,53 +114,6 @@ public class ReminderReceiver extends BroadcastReceiver {
         Log.d(TAG, "ReminderActivity launched");
     }
 
-    private void createReminderNotificationChannel(Context context) {
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-            NotificationManager manager = context.getSystemService(NotificationManager.class);
-            if (manager != null) {
-                // Delete existing channel to force recreation with new pattern
-                NotificationChannel existingChannel = manager.getNotificationChannel(REMINDER_CHANNEL_ID);
-                if (existingChannel != null) {
-                    manager.deleteNotificationChannel(REMINDER_CHANNEL_ID);
-                    Log.d(TAG, "Old notification channel deleted for recreation");
-                }
-
-                // More intense and longer vibration pattern for Garmin watch
-                // Format: {delay, vibration1, pause1, vibration2, pause2, ...}
-                // 5 long vibrations (500ms) with short pauses (150ms), then final pause
-                // (500ms)
-                long[] intensiveVibrationPattern = {
-                        0, // Start immediately
-                        500, // Long vibration 500ms
-                        150, // Short pause
-                        500, // Long vibration 500ms
-                        150, // Short pause
-                        500, // Long vibration 500ms
-                        150, // Short pause
-                        500, // Long vibration 500ms
-                        150, // Short pause
-                        500, // Long vibration 500ms
-                        500 // Final pause before repeat
-                };
-
-                NotificationChannel channel = new NotificationChannel(
-                        REMINDER_CHANNEL_ID,
-                        context.getString(R.string.reminder_channel_name),
-                        NotificationManager.IMPORTANCE_HIGH // IMPORTANCE_HIGH pour garantir la synchronisation avec
-                                                            // Garmin
-                );
-                channel.setDescription(context.getString(R.string.reminder_channel_description));
-                channel.setShowBadge(true);
-                channel.enableLights(true);
-                channel.enableVibration(true);
-                channel.setVibrationPattern(intensiveVibrationPattern);
-
-                manager.createNotificationChannel(channel);
-                Log.d(TAG, "Notification channel for reminders created with intense vibration pattern (5x500ms)");
-            }
-        }
-    }
-
     private void sendReminderNotification(Context context, String eventTitle, long eventId) {
         NotificationManager manager = context.getSystemService(NotificationManager.class);
         if (manager == null) {
@@ -107,7 +123,7 @@ public class ReminderReceiver extends BroadcastReceiver {
 
         // Create intent to open main activity when clicking on
         // notification
-        Intent notificationIntent = new Intent(context, MainActivity.class);
+        Intent notificationIntent = ActivityIntents.mainActivity(context);
         PendingIntent pendingIntent = PendingIntent.getActivity(
                 context,
                 (int) eventId,
@@ -116,7 +132,7 @@ public class ReminderReceiver extends BroadcastReceiver {
 
         // Construire la notification
         String defaultEventTitle = context.getString(R.string.event_title);
-        NotificationCompat.Builder builder = new NotificationCompat.Builder(context, REMINDER_CHANNEL_ID)
+        NotificationCompat.Builder builder = new NotificationCompat.Builder(context, NotificationChannels.REMINDER_CHANNEL_ID)
                 .setSmallIcon(R.drawable.ic_clock)
                 .setContentTitle(context.getString(R.string.reminder_notification_title))
                 .setContentText(eventTitle != null ? eventTitle : defaultEventTitle)
@@ -127,8 +143,7 @@ public class ReminderReceiver extends BroadcastReceiver {
                 .setContentIntent(pendingIntent)
                 .setAutoCancel(true) // Notification disappears when clicked
                 .setVisibility(NotificationCompat.VISIBILITY_PUBLIC) // Visible on locked screen
-                .setVibrate(new long[] { 0, 500, 150, 500, 150, 500, 150, 500, 150, 500, 500 }) // Intense vibration
-                                                                                                // pattern
+                .setVibrate(NotificationChannels.REMINDER_VIBRATION_PATTERN) // Intense vibration pattern
                 .setDefaults(NotificationCompat.DEFAULT_LIGHTS); // Default LED
 
         // Use unique ID based on eventId to allow multiple
@@ -0,0 +1,76 @@
+package org.wakeup;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.util.Log;
+
+/**
+ * Registers the single AlarmManager alarm that wakes CalendarMonitorService
+ * when the next reminder is due.
+ *
+ * Between two alarms the CPU is free to sleep: the service no longer
+ * needs a permanent WakeLock to keep its check loop running.
+ */
+public class ReminderScheduler {
+    private static final String TAG = "ReminderScheduler";
+    private static final int REQUEST_CODE_REMINDER_CHECK = 9003;
+
+    private ReminderScheduler() {
+    }
+
+    /**
+     * Schedules the next reminder check at triggerAt, replacing any previous one
+     */
+    public static void scheduleCheck(Context context, long triggerAt) {
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        if (alarmManager == null) {
+            Log.w(TAG, "AlarmManager unavailable, cannot schedule reminder check");
+            return;
+        }
+
+        setExactAlarm(alarmManager, triggerAt, createCheckPendingIntent(context));
+        Log.d(TAG, "Next reminder check scheduled in "
+                + ((triggerAt - AppClock.get().currentTimeMillis()) / 1000) + " seconds");
+    }
+
+    /**
+     * Registers an exact, idle-allowed RTC_WAKEUP alarm, falling back to an
+     * inexact alarm if the SCHEDULE_EXACT_ALARM permission is not granted
+     */
+    static void setExactAlarm(AlarmManager alarmManager, long triggerAt, PendingIntent pendingIntent) {
+        MonitorMetrics.ALARMS_SET.increment();
+        try {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S && !alarmManager.canScheduleExactAlarms()) {
+                Log.w(TAG, "SCHEDULE_EXACT_ALARM permission not granted, using inexact alarm");
+                alarmManager.setAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, triggerAt, pendingIntent);
+            } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                alarmManager.setExactAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, triggerAt, pendingIntent);
+            } else {
+                alarmManager.setExact(AlarmManager.RTC_WAKEUP, triggerAt, pendingIntent);
+            }
+        } catch (SecurityException e) {
+            Log.e(TAG, "Security error scheduling alarm", e);
+        }
+    }
+
+    private static PendingIntent createCheckPendingIntent(Context context) {
+        Intent intent = new Intent(context, CalendarMonitorService.class);
+        intent.setAction(CalendarMonitorService.ACTION_CHECK_REMINDERS);
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            return PendingIntent.getForegroundService(
+                    context,
+                    REQUEST_CODE_REMINDER_CHECK,
+                    intent,
+                    PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+        }
+        return PendingIntent.getService(
+                context,
+                REQUEST_CODE_REMINDER_CHECK,
+                intent,
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+    }
+}
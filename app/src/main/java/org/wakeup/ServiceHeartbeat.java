@@ -0,0 +1,109 @@
+package org.wakeup;
+
+import android.os.Handler;
+import android.util.Log;
+
+import org.wakeup.engine.ReminderPolicy;
+
+/**
+ * Liveness of CalendarMonitorService, read by ServiceKeepAliveReceiver.
+ *
+ * The service stamps the elapsed realtime of its creation and of each check
+ * in process memory, and clears the stamp when destroyed. The receiver runs in
+ * the service's process (both use the monitorProcess placeholder): if the
+ * process was killed, the alarm starts a new one in which no stamp exists.
+ * This replaces listing the running services through ActivityManager.
+ *
+ * Checks can be hours apart, so each keep-alive check also asks the service's
+ * worker thread for a beat (requestBeat()). A stamp older than two keep-alive
+ * intervals then means that the worker is stuck: the service is running but
+ * not responsive, and is restarted as well.
+ *
+ * The keep-alive interval also lives here: it widens while the service is
+ * found alive and is back to its minimum in a new process, i.e. after a kill.
+ */
+public final class ServiceHeartbeat {
+    private static final String TAG = "ServiceHeartbeat";
+
+    // Elapsed realtime of the last beat, 0 if the service is not running in this process
+    private static volatile long lastBeat;
+    // Worker thread of the running service, null if stopped
+    private static volatile Handler worker;
+    private static volatile long keepAliveInterval = ReminderPolicy.KEEP_ALIVE_MIN_INTERVAL;
+
+    private ServiceHeartbeat() {
+    }
+
+    /**
+     * Called by the service when created, with the handler of its worker thread
+     */
+    public static void start(Handler workerHandler) {
+        worker = workerHandler;
+        beat();
+    }
+
+    /**
+     * Called by the service at each check, on its worker thread
+     */
+    public static void beat() {
+        // Never 0, which means stopped
+        lastBeat = Math.max(1, AppClock.get().elapsedRealtime());
+    }
+
+    /**
+     * Called by the service when destroyed
+     */
+    public static void stop() {
+        worker = null;
+        lastBeat = 0;
+    }
+
+    /**
+     * Asks the service's worker thread for a beat, checked by the next keep-alive check
+     */
+    public static void requestBeat() {
+        Handler handler = worker;
+        if (handler != null) {
+            handler.post(ServiceHeartbeat::beat);
+        }
+    }
+
+    public static boolean isAlive() {
+        return lastBeat != 0;
+    }
+
+    /**
+     * Returns true if the service is running and its worker thread beat recently
+     * enough for the current keep-alive interval
+     */
+    public static boolean isResponsive() {
+        long age = age();
+        return age >= 0 && !ReminderPolicy.isHeartbeatStale(age, keepAliveInterval);
+    }
+
+    /**
+     * Milliseconds since the last beat, or -1 if the service is not running
+     */
+    public static long age() {
+        long beat = lastBeat;
+        return beat == 0 ? -1 : AppClock.get().elapsedRealtime() - beat;
+    }
+
+    public static long keepAliveInterval() {
+        return keepAliveInterval;
+    }
+
+    /**
+     * Updates the keep-alive interval after a check that found the service alive or not,
+     * and returns it
+     */
+    public static long onKeepAliveCheck(boolean alive) {
+        long interval = ReminderPolicy.nextKeepAliveInterval(keepAliveInterval, alive);
+        if (interval != keepAliveInterval) {
+            Log.d(TAG, "Keep-alive interval: " + (interval / 1000) + " seconds");
+        }
+        keepAliveInterval = interval;
+        MonitorMetrics.KEEP_ALIVE_INTERVAL.set(interval);
+        return interval;
+    }
+}
@@ -1,7 +1,5 @@
 package org.wakeup;
 
-import android.app.AlarmManager;
-import android.app.PendingIntent;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
@@ -13,71 +11,59 @@ import androidx.core.content.ContextCompat;
 public class ServiceNotificationDismissReceiver extends BroadcastReceiver {
     private static final String TAG = "ServiceNotifDismiss";
 
-    private static final int REQUEST_CODE_FALLBACK = 9001;
+    private static final String TASK_FALLBACK = "notification_fallback";
+    private static final long FALLBACK_DELAY = 5000;
 
     public static final String ACTION_SERVICE_NOTIFICATION_DISMISSED = "org.wakeup.SERVICE_NOTIFICATION_DISMISSED";
+    // Relayed by AlarmCoalescer when the fallback is due
+    private static final String ACTION_NOTIFICATION_FALLBACK = "org.wakeup.SERVICE_NOTIFICATION_FALLBACK";
 
     @Override
     public void onReceive(Context context, Intent intent) {
-        Log.d(TAG, "Service notification dismissed, recreating...");
-
         if (ACTION_SERVICE_NOTIFICATION_DISMISSED.equals(intent.getAction())) {
-            // Restart service so it recreates the notification
-            Intent serviceIntent = new Intent(context, CalendarMonitorService.class);
-            serviceIntent.setAction(CalendarMonitorService.ACTION_RECREATE_NOTIFICATION);
+            Log.d(TAG, "Service notification dismissed, recreating...");
 
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-                ContextCompat.startForegroundService(context, serviceIntent);
-            } else {
-                context.startService(serviceIntent);
-            }
+            // Restart service so it recreates the notification
+            startService(context, CalendarMonitorService.ACTION_RECREATE_NOTIFICATION);
 
             scheduleFallback(context);
 
             Log.d(TAG, "Service notification recreation requested");
+        } else if (ACTION_NOTIFICATION_FALLBACK.equals(intent.getAction())) {
+            // Makes sure the notification came back
+            startService(context, CalendarMonitorService.ACTION_FORCE_NOTIFICATION_CHECK);
         }
     }
 
-    private static PendingIntent createFallbackPendingIntent(Context context) {
-        Intent forceIntent = new Intent(context, CalendarMonitorService.class);
-        forceIntent.setAction(CalendarMonitorService.ACTION_FORCE_NOTIFICATION_CHECK);
-
-        return PendingIntent.getService(
-                context,
-                REQUEST_CODE_FALLBACK,
-                forceIntent,
-                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
-    }
-
-    private static void scheduleFallback(Context context) {
-        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
-        if (alarmManager == null) {
-            Log.w(TAG, "AlarmManager unavailable, cannot schedule fallback");
-            return;
-        }
-
-        cancelFallback(context);
-
-        PendingIntent pendingIntent = createFallbackPendingIntent(context);
-        long triggerAt = System.currentTimeMillis() + 5000; // 5 secondes
+    private static void startService(Context context, String action) {
+        Intent serviceIntent = new Intent(context, CalendarMonitorService.class);
+        serviceIntent.setAction(action);
 
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-            alarmManager.setExactAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, triggerAt, pendingIntent);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            ContextCompat.startForegroundService(context, serviceIntent);
         } else {
-            alarmManager.setExact(AlarmManager.RTC_WAKEUP, triggerAt, pendingIntent);
+            context.startService(serviceIntent);
         }
+    }
 
-        Log.d(TAG, "Fallback AlarmManager scheduled in 5s");
+    private static Intent createFallbackIntent(Context context) {
+        Intent fallbackIntent = new Intent(context, ServiceNotificationDismissReceiver.class);
+        fallbackIntent.setAction(ACTION_NOTIFICATION_FALLBACK);
+        return fallbackIntent;
     }
 
-    public static void cancelFallback(Context context) {
-        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
-        if (alarmManager == null) {
-            return;
-        }
+    private static void scheduleFallback(Context context) {
+        // In 5 seconds, or up to 5 seconds later with another task
+        AlarmCoalescer.getInstance(context).add(context, TASK_FALLBACK,
+                AppClock.get().currentTimeMillis() + FALLBACK_DELAY, FALLBACK_DELAY,
+                createFallbackIntent(context));
+        Log.d(TAG, "Fallback scheduled in 5s");
+    }
 
-        PendingIntent pendingIntent = createFallbackPendingIntent(context);
-        alarmManager.cancel(pendingIntent);
-        Log.d(TAG, "Fallback AlarmManager cancelled");
+    /**
+     * Cancels the fallback; called from the monitor process, where the AlarmCoalescer queue lives
+     */
+    public static void cancelFallback(Context context) {
+        AlarmCoalescer.getInstance(context).remove(context, TASK_FALLBACK);
     }
 }
@@ -0,0 +1,80 @@
+package org.wakeup;
+
+import android.app.Notification;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.util.Log;
+
+import androidx.core.app.NotificationCompat;
+
+/**
+ * Builds the foreground notification of CalendarMonitorService once per process.
+ *
+ * startForeground() and the notification checks post it every few seconds,
+ * and its content is constant, so every call returns the same Notification
+ * and PendingIntents. The build cost goes to the log, to keep an eye on the
+ * startForeground() deadline.
+ */
+public final class ServiceNotificationFactory {
+    private static final String TAG = "ServiceNotification";
+
+    private static Notification notification;
+
+    private ServiceNotificationFactory() {
+    }
+
+    /**
+     * Returns the service notification, built on the first call
+     */
+    public static synchronized Notification get(Context context) {
+        if (notification == null) {
+            notification = build(context.getApplicationContext());
+        }
+        return notification;
+    }
+
+    private static Notification build(Context context) {
+        long startTime = System.currentTimeMillis();
+
+        Intent notificationIntent = ActivityIntents.mainActivity(context);
+        PendingIntent pendingIntent = PendingIntent.getActivity(
+                context, 0, notificationIntent,
+                PendingIntent.FLAG_IMMUTABLE | PendingIntent.FLAG_UPDATE_CURRENT);
+
+        Intent deleteIntent = new Intent(context, ServiceNotificationDismissReceiver.class);
+        deleteIntent.setAction(ServiceNotificationDismissReceiver.ACTION_SERVICE_NOTIFICATION_DISMISSED);
+        PendingIntent deletePendingIntent = PendingIntent.getBroadcast(
+                context,
+                0,
+                deleteIntent,
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+        long intentEnd = System.currentTimeMillis();
+        Log.d(TAG, "PendingIntents created in " + (intentEnd - startTime) + " ms");
+
+        NotificationCompat.Builder builder = new NotificationCompat.Builder(context, NotificationChannels.SERVICE_CHANNEL_ID)
+                .setContentTitle("Wake Up")
+                .setContentText("Calendar monitoring active")
+                .setSmallIcon(R.drawable.ic_clock)
+                .setContentIntent(pendingIntent)
+                .setOngoing(true) // Persistent notification (cannot be dismissed)
+                .setDeleteIntent(deletePendingIntent) // Detect if it is still dismissed
+                .setPriority(NotificationCompat.PRIORITY_DEFAULT)
+                .setCategory(NotificationCompat.CATEGORY_SERVICE)
+                .setShowWhen(false)
+                .setAutoCancel(false) // Do not auto-dismiss
+                .setVisibility(NotificationCompat.VISIBILITY_PUBLIC) // Visible even on locked screen
+                .setBadgeIconType(NotificationCompat.BADGE_ICON_NONE); // No notification badge
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
+            builder.setForegroundServiceBehavior(NotificationCompat.FOREGROUND_SERVICE_IMMEDIATE);
+        }
+
+        Notification built = builder.build();
+        long builderEnd = System.currentTimeMillis();
+        Log.d(TAG, "Notification.Builder.build() en " + (builderEnd - intentEnd) + " ms");
+        Log.d(TAG, "Service notification built in " + (builderEnd - startTime) + " ms");
+        return built;
+    }
+}
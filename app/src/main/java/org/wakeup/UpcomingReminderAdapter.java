@@ -0,0 +1,143 @@
+package org.wakeup;
+
+import android.content.Context;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Upcoming reminders list of MainActivity.
+ *
+ * New snapshots are diffed against the displayed list, so identical rows are
+ * neither re-inflated nor re-bound. setCurrentTime() only re-binds the
+ * relative-time text of rows where it actually changed. Date formatters are
+ * created once per adapter; it must only be used on the main thread.
+ */
+public class UpcomingReminderAdapter
+        extends ListAdapter<CalendarRepository.UpcomingReminder, UpcomingReminderAdapter.ViewHolder> {
+
+    // Payload of a change limited to the relative reminder time
+    private static final Object PAYLOAD_RELATIVE_TIME = new Object();
+
+    private static final DiffUtil.ItemCallback<CalendarRepository.UpcomingReminder> DIFF_CALLBACK =
+            new DiffUtil.ItemCallback<CalendarRepository.UpcomingReminder>() {
+                @Override
+                public boolean areItemsTheSame(@NonNull CalendarRepository.UpcomingReminder oldItem,
+                        @NonNull CalendarRepository.UpcomingReminder newItem) {
+                    return oldItem.eventId == newItem.eventId
+                            && oldItem.reminderTime == newItem.reminderTime
+                            && oldItem.reminderMinutes == newItem.reminderMinutes;
+                }
+
+                @Override
+                public boolean areContentsTheSame(@NonNull CalendarRepository.UpcomingReminder oldItem,
+                        @NonNull CalendarRepository.UpcomingReminder newItem) {
+                    return oldItem.eventStartTime == newItem.eventStartTime
+                            && oldItem.title.equals(newItem.title);
+                }
+            };
+
+    private final Context context;
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("EEE d MMM 'at' HH:mm", Locale.getDefault());
+    private final SimpleDateFormat timeFormat = new SimpleDateFormat("HH:mm", Locale.getDefault());
+    private long currentTime = System.currentTimeMillis();
+
+    public UpcomingReminderAdapter(Context context) {
+        super(DIFF_CALLBACK);
+        this.context = context;
+    }
+
+    /**
+     * Moves the reference time of the relative texts ("in 12 min"), re-binding
+     * only the rows whose text changes
+     */
+    public void setCurrentTime(long time) {
+        long previousTime = currentTime;
+        currentTime = time;
+        List<CalendarRepository.UpcomingReminder> reminders = getCurrentList();
+        for (int i = 0; i < reminders.size(); i++) {
+            CalendarRepository.UpcomingReminder reminder = reminders.get(i);
+            // The text only depends on the number of minutes left
+            if (minutesLeft(reminder, previousTime) != minutesLeft(reminder, time)) {
+                notifyItemChanged(i, PAYLOAD_RELATIVE_TIME);
+            }
+        }
+    }
+
+    @NonNull
+    @Override
+    public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.item_event, parent, false);
+        return new ViewHolder(view);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
+        CalendarRepository.UpcomingReminder reminder = getItem(position);
+
+        // Event title
+        holder.titleView.setText(reminder.title.isEmpty() ? context.getString(R.string.no_title) : reminder.title);
+        holder.reminderTimeView.setText(reminderText(reminder, currentTime));
+        // Event time
+        holder.eventTimeView.setText(context.getString(R.string.event_time,
+                dateFormat.format(new Date(reminder.eventStartTime)), reminder.reminderMinutes));
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull ViewHolder holder, int position, @NonNull List<Object> payloads) {
+        // PAYLOAD_RELATIVE_TIME is the only partial change this adapter notifies
+        if (payloads.isEmpty()) {
+            super.onBindViewHolder(holder, position, payloads);
+            return;
+        }
+        holder.reminderTimeView.setText(reminderText(getItem(position), currentTime));
+    }
+
+    private static long minutesLeft(CalendarRepository.UpcomingReminder reminder, long time) {
+        return (reminder.reminderTime - time) / (60 * 1000);
+    }
+
+    private String reminderText(CalendarRepository.UpcomingReminder reminder, long time) {
+        Date reminderDate = new Date(reminder.reminderTime);
+        long diffMinutes = minutesLeft(reminder, time);
+
+        if (diffMinutes < 0) {
+            return context.getString(R.string.reminder_past);
+        } else if (diffMinutes < 1) {
+            return context.getString(R.string.reminder_now);
+        } else if (diffMinutes < 60) {
+            return context.getString(R.string.reminder_at, timeFormat.format(reminderDate), diffMinutes);
+        } else if (diffMinutes < 1440) {
+            long hours = diffMinutes / 60;
+            long mins = diffMinutes % 60;
+            String minsStr = mins > 0 ? mins + "min" : "";
+            return context.getString(R.string.reminder_at_hours, timeFormat.format(reminderDate), hours, minsStr);
+        } else {
+            return context.getString(R.string.reminder_on, dateFormat.format(reminderDate));
+        }
+    }
+
+    static class ViewHolder extends RecyclerView.ViewHolder {
+        final TextView titleView;
+        final TextView reminderTimeView;
+        final TextView eventTimeView;
+
+        ViewHolder(View view) {
+            super(view);
+            titleView = view.findViewById(R.id.textViewTitle);
+            reminderTimeView = view.findViewById(R.id.textViewReminderTime);
+            eventTimeView = view.findViewById(R.id.textViewEventTime);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package org.wakeup;
+
+import static org.junit.Assert.assertEquals;
+
+import android.content.Context;
+import android.content.Intent;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/**
+ * The activity names of ActivityIntents must follow a rename of the activities
+ */
+@RunWith(RobolectricTestRunner.class)
+public class ActivityIntentsTest {
+
+    @Test
+    public void namesTheActivities() {
+        Context context = ApplicationProvider.getApplicationContext();
+        Intent main = ActivityIntents.mainActivity(context);
+        assertEquals(MainActivity.class.getName(), main.getComponent().getClassName());
+        assertEquals(context.getPackageName(), main.getComponent().getPackageName());
+        assertEquals(ReminderActivity.class.getName(),
+                ActivityIntents.reminderActivity(context).getComponent().getClassName());
+    }
+}
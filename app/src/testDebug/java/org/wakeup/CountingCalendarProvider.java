@@ -0,0 +1,128 @@
+package org.wakeup;
+
+import android.database.Cursor;
+import android.net.Uri;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * SyntheticCalendarProvider counting the queries, rows and CursorWindow bytes
+ * served per table (calendars, events, instances, reminders, calendar_alerts),
+ * and the bytes it allocates itself, which a real provider would allocate in
+ * its own process.
+ *
+ * Window bytes are those of a CursorWindow holding the whole result: a row
+ * slot per row, a field slot per column, and the UTF-8 bytes of each string
+ * or blob. A real window holds 2 MB at most, refilled as the cursor moves on.
+ */
+public class CountingCalendarProvider extends SyntheticCalendarProvider {
+    // Sizes of CursorWindow's native row and field slots
+    private static final int ROW_SLOT_SIZE = 4;
+    private static final int FIELD_SLOT_SIZE = 12;
+
+    private final Map<String, int[]> queries = new HashMap<>();
+    private final Map<String, int[]> rows = new HashMap<>();
+    private final Map<String, long[]> windowBytes = new HashMap<>();
+    private long allocated;
+
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
+            String sortOrder) {
+        long allocatedBefore = allocatedBytes();
+        Cursor cursor = super.query(uri, projection, selection, selectionArgs, sortOrder);
+        String table = uri.getPathSegments().get(0);
+        queries.computeIfAbsent(table, t -> new int[1])[0]++;
+        if (cursor != null) {
+            rows.computeIfAbsent(table, t -> new int[1])[0] += cursor.getCount();
+            windowBytes.computeIfAbsent(table, t -> new long[1])[0] += windowBytes(cursor);
+        }
+        allocated += allocatedBytes() - allocatedBefore;
+        return cursor;
+    }
+
+    /**
+     * Size of a CursorWindow holding every row of cursor, left before its first row
+     */
+    private static long windowBytes(Cursor cursor) {
+        int columns = cursor.getColumnCount();
+        long bytes = 0;
+        while (cursor.moveToNext()) {
+            bytes += ROW_SLOT_SIZE + (long) FIELD_SLOT_SIZE * columns;
+            for (int i = 0; i < columns; i++) {
+                switch (cursor.getType(i)) {
+                    case Cursor.FIELD_TYPE_STRING:
+                        bytes += cursor.getString(i).getBytes(StandardCharsets.UTF_8).length + 1;
+                        break;
+                    case Cursor.FIELD_TYPE_BLOB:
+                        bytes += cursor.getBlob(i).length;
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+        cursor.moveToPosition(-1);
+        return bytes;
+    }
+
+    int queries(String table) {
+        int[] count = queries.get(table);
+        return count != null ? count[0] : 0;
+    }
+
+    int queries() {
+        int total = 0;
+        for (int[] count : queries.values()) {
+            total += count[0];
+        }
+        return total;
+    }
+
+    int rows(String table) {
+        int[] count = rows.get(table);
+        return count != null ? count[0] : 0;
+    }
+
+    int rows() {
+        int total = 0;
+        for (int[] count : rows.values()) {
+            total += count[0];
+        }
+        return total;
+    }
+
+    long windowBytes(String table) {
+        long[] bytes = windowBytes.get(table);
+        return bytes != null ? bytes[0] : 0;
+    }
+
+    long windowBytes() {
+        long total = 0;
+        for (long[] bytes : windowBytes.values()) {
+            total += bytes[0];
+        }
+        return total;
+    }
+
+    long allocated() {
+        return allocated;
+    }
+
+    void reset() {
+        queries.clear();
+        rows.clear();
+        windowBytes.clear();
+        allocated = 0;
+    }
+
+    /**
+     * Bytes allocated so far by the calling thread
+     */
+    static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
@@ -0,0 +1,185 @@
+package org.wakeup;
+
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.os.Bundle;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.shadows.ShadowAlarmManager;
+import org.wakeup.engine.VirtualClock;
+
+/**
+ * Query, CursorWindow and allocation budget of the monitor's provider reads,
+ * measured on the real ReminderCheck and CalendarRepository.scan() against a
+ * counting SyntheticCalendarProvider, on calendars of about 10, 1k and 10k
+ * instances. 50k instances, as SimulationCheck runs, would take too long here:
+ * FiredReminderStore saves its whole day of entries at each of the ~25k
+ * reminders fired.
+ *
+ * Per check, besides titles: the longest alert reminder, the instances of the
+ * next slice, the reminders of their events by chunks of event IDs and, until
+ * the reminder source is selected, the calendar alerts, each read at most once.
+ * Titles are only read for the reminders fired by the check and those of the
+ * published snapshot. Projections hold two numeric columns (the calendar
+ * alerts aside, which SyntheticCalendarProvider leaves empty). Allocations are
+ * those of an idle check, measured on each calendar, plus a margin and a
+ * small part per row read and per reminder fired. A per-row query, an extra
+ * scan, a wider projection or a per-row object brought back in the check fails
+ * these tests; raising a budget is a deliberate change of this file.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class QueryBudgetTest {
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+    // Monday 2024-01-15 00:00 UTC
+    private static final long START_TIME = 1705276800000L;
+
+    // Longest reminder, instances and calendar alerts, besides the reminder chunks
+    private static final int MAX_CHECK_QUERIES = 3;
+    // CursorWindow bytes of a row: its row slot and two numeric field slots
+    private static final long WINDOW_BYTES_PER_ROW = 4 + 2 * 12;
+    // Bytes a check may allocate beyond an idle one, the provider's own allocations
+    // aside: a margin, plus each row read (growth of the reused index and reader
+    // arrays, event ID arguments) and each reminder fired (intents, alarm, title)
+    private static final long ALLOCATION_MARGIN = 128 * 1024;
+    private static final long ALLOCATION_PER_ROW = 96;
+    private static final long ALLOCATION_PER_FIRED = 24 * 1024;
+    // CalendarRepository queries its reminders by chunks of event IDs
+    private static final int EVENT_IDS_PER_QUERY = 500;
+
+    private Context context;
+    private VirtualClock clock;
+    private CountingCalendarProvider provider;
+
+    @Before
+    public void setUp() {
+        context = ApplicationProvider.getApplicationContext();
+        provider = Robolectric.buildContentProvider(CountingCalendarProvider.class)
+                .create(SyntheticCalendarProvider.AUTHORITY)
+                .get();
+        CalendarUris.setAuthority(SyntheticCalendarProvider.AUTHORITY);
+        ShadowAlarmManager.setCanScheduleExactAlarms(true);
+    }
+
+    @After
+    public void tearDown() {
+        CalendarUris.setAuthority(null);
+        AppClock.set(null);
+    }
+
+    @Test
+    public void smallCalendar() {
+        checkDay(0, 10);
+    }
+
+    @Test
+    public void mediumCalendar() {
+        checkDay(1, 1_000);
+    }
+
+    @Test
+    public void largeCalendar() {
+        checkDay(2, 10_000);
+    }
+
+    @Test
+    public void scanReadsEachInstanceOnce() {
+        Bundle calendar = generate(START_TIME + 3 * 7 * DAY, 10_000);
+        int instances = calendar.getInt("instances");
+        int reminders = calendar.getInt("reminders");
+
+        provider.reset();
+        new CalendarRepository(context).scan();
+
+        int slices = CalendarRepository.SCAN_STEPS.length;
+        int maxQueries = 1 + slices * (1 + (instances + EVENT_IDS_PER_QUERY - 1) / EVENT_IDS_PER_QUERY)
+                + CalendarRepository.SNAPSHOT_SIZE;
+        assertBudget("scan queries", provider.queries(), maxQueries);
+        assertBudget("scan instance rows", provider.rows("instances"), instances);
+        // Longest lead time, then the reminders of each slice's events
+        assertBudget("scan reminder rows", provider.rows("reminders"), reminders * (1 + slices));
+        assertBudget("scan title queries", provider.queries("events"), CalendarRepository.SNAPSHOT_SIZE);
+        assertBudget("scan CursorWindow bytes", provider.windowBytes() - provider.windowBytes("events"),
+                WINDOW_BYTES_PER_ROW * (provider.rows() - provider.rows("events")));
+    }
+
+    /**
+     * Runs the checks of a simulated day on a calendar of about instances instances,
+     * and checks the budget of each. Each run gets its own week, so that reminders
+     * fired by a previous run are long expired.
+     */
+    private void checkDay(int run, int instances) {
+        long start = START_TIME + run * 7 * DAY;
+        Bundle calendar = generate(start, instances);
+        int instanceCount = calendar.getInt("instances");
+        int maxQueries = MAX_CHECK_QUERIES + (instanceCount + EVENT_IDS_PER_QUERY - 1) / EVENT_IDS_PER_QUERY;
+        // The longest reminder query's cursor counts every reminder, though one row is read
+        int maxRows = 2 * calendar.getInt("reminders") + instanceCount;
+
+        ReminderCheck check = new ReminderCheck(context, clock, FiredReminderStore.getInstance(context),
+                new CalendarRepository(context));
+        AlarmCoalescer coalescer = AlarmCoalescer.getInstance(context);
+        long end = start + DAY;
+        int checks = 0;
+        long idleAllocated = -1;
+        while (clock.currentTimeMillis() < end) {
+            // As CalendarMonitorService's check: deferred tasks first
+            coalescer.dispatchDue(context);
+            provider.reset();
+            long firedBefore = MonitorMetrics.REMINDERS_FIRED.get();
+            long allocatedBefore = CountingCalendarProvider.allocatedBytes();
+            long nextCheckTime = check.run();
+            long allocated = CountingCalendarProvider.allocatedBytes() - allocatedBefore - provider.allocated();
+            int fired = (int) (MonitorMetrics.REMINDERS_FIRED.get() - firedBefore);
+            checks++;
+
+            int titles = provider.queries("events");
+            int queries = provider.queries() - titles;
+            int rows = provider.rows() - provider.rows("events");
+            long windowBytes = provider.windowBytes() - provider.windowBytes("events");
+            if (idleAllocated < 0) {
+                // The same check again, with nothing left to read or fire: the fixed cost of a check
+                provider.reset();
+                long idleBefore = CountingCalendarProvider.allocatedBytes();
+                check.run();
+                idleAllocated = CountingCalendarProvider.allocatedBytes() - idleBefore - provider.allocated();
+            }
+            assertBudget("queries per check", queries, maxQueries);
+            assertBudget("rows per check", rows, maxRows);
+            assertBudget("CursorWindow bytes per check", windowBytes, WINDOW_BYTES_PER_ROW * rows);
+            assertBudget("title queries per check", titles, fired + CalendarRepository.SNAPSHOT_SIZE);
+            assertBudget("bytes allocated per check", allocated, idleAllocated + ALLOCATION_MARGIN
+                    + ALLOCATION_PER_ROW * (rows + titles) + ALLOCATION_PER_FIRED * fired);
+
+            assertTrue("check failed at " + clock.currentTimeMillis(), nextCheckTime != Long.MAX_VALUE);
+            clock.advanceTo(Math.max(clock.currentTimeMillis() + 1, nextCheckTime));
+        }
+        assertTrue("no check ran", checks > 0);
+    }
+
+    /**
+     * Replaces the provider's calendar by one of about instances instances over three
+     * days, the first of them before start, and sets the clock to start
+     */
+    private Bundle generate(long start, int instances) {
+        clock = new VirtualClock(start);
+        AppClock.set(clock);
+        Bundle extras = new Bundle();
+        extras.putLong("start", start - DAY);
+        extras.putInt("days", 3);
+        extras.putInt("eventsPerDay", Math.max(1, instances / 3));
+        extras.putLong("seed", 1);
+        return provider.call(SyntheticCalendarProvider.METHOD_GENERATE, null, extras);
+    }
+
+    private static void assertBudget(String name, long value, long budget) {
+        assertTrue(name + ": " + value + " (budget " + budget + ")", value <= budget);
+    }
+}
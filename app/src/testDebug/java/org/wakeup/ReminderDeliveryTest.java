@@ -0,0 +1,225 @@
+package org.wakeup;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.os.Bundle;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.shadows.ShadowAlarmManager;
+import org.wakeup.engine.EventReminders;
+import org.wakeup.engine.FireTimeIndex;
+import org.wakeup.engine.ReminderPolicy;
+import org.wakeup.engine.SyntheticCalendar;
+import org.wakeup.engine.VirtualClock;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Regression tests of reminder delivery on SyntheticCalendarProvider: over a
+ * simulated day, ReminderCheck fires every due reminder of the visible
+ * calendars exactly once, with or without alarm clocks (their backstop then
+ * applies, as no alarm is delivered here), and CalendarRepository.scan()
+ * lists the actual next reminders. A reminder left to an alarm clock that is
+ * not delivered is fired once the backstop delay has passed.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class ReminderDeliveryTest {
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+    // Monday 2024-02-05 00:00 UTC, weeks after QueryBudgetTest's runs
+    private static final long START_TIME = 1707091200000L;
+    private static final float RECURRING_RATIO = 0.2f;
+
+    private Context context;
+    private VirtualClock clock;
+    private SyntheticCalendarProvider provider;
+
+    @Before
+    public void setUp() {
+        context = ApplicationProvider.getApplicationContext();
+        provider = Robolectric.buildContentProvider(SyntheticCalendarProvider.class)
+                .create(SyntheticCalendarProvider.AUTHORITY)
+                .get();
+        CalendarUris.setAuthority(SyntheticCalendarProvider.AUTHORITY);
+    }
+
+    @After
+    public void tearDown() {
+        CalendarUris.setAuthority(null);
+        AppClock.set(null);
+    }
+
+    @Test
+    public void everyDueReminderFiresOnceWithoutAlarmClocks() {
+        ShadowAlarmManager.setCanScheduleExactAlarms(false);
+        checkDay(START_TIME, false);
+    }
+
+    @Test
+    public void everyDueReminderFiresOnceWithAlarmClocks() {
+        ShadowAlarmManager.setCanScheduleExactAlarms(true);
+        checkDay(START_TIME + 7 * DAY, true);
+    }
+
+    @Test
+    public void backstopFiresReminderLeftToItsAlarmClock() {
+        ShadowAlarmManager.setCanScheduleExactAlarms(true);
+        long start = START_TIME + 3 * 7 * DAY;
+        SyntheticCalendar calendar = generate(start, 300);
+        FiredReminderStore firedReminders = FiredReminderStore.getInstance(context);
+        ReminderCheck check = new ReminderCheck(context, clock, firedReminders, new CalendarRepository(context));
+        // Registers the alarm clocks of the upcoming reminders
+        check.run();
+
+        // First reminder after that check, whose alarm clock is never delivered here
+        long eventId = -1;
+        int minutes = 0;
+        long fireTime = Long.MAX_VALUE;
+        EventReminders reminders = calendar.remindersByEvent();
+        for (int i = 0; i < calendar.instanceCount(); i++) {
+            long instanceEventId = calendar.instanceEventIdAt(i);
+            if (!calendar.isCalendarVisible(calendar.calendarIdOf(instanceEventId))) {
+                continue;
+            }
+            for (int r = reminders.first(instanceEventId); r != -1; r = reminders.next(r)) {
+                long reminderTime = FireTimeIndex.fireTime(calendar.instanceBeginAt(i), reminders.minutesAt(r));
+                if (reminderTime > start + ReminderPolicy.FIRE_EARLY_TOLERANCE && reminderTime < fireTime
+                        && reminders.minutesAt(r) <= ReminderPolicy.MAX_REMINDER_MINUTES) {
+                    eventId = instanceEventId;
+                    minutes = reminders.minutesAt(r);
+                    fireTime = reminderTime;
+                }
+            }
+        }
+        assertTrue("no upcoming reminder", eventId != -1);
+
+        // A check 2 s after its fire time leaves it to its alarm clock...
+        clock.advanceTo(fireTime + 2000);
+        long nextCheckTime = check.run();
+        assertFalse(firedReminders.isFired(eventId, minutes, fireTime));
+        // ...but comes back for it once the backstop delay has passed
+        assertTrue("next check at " + nextCheckTime,
+                nextCheckTime <= fireTime + ReminderPolicy.DELIVERY_BACKSTOP);
+        clock.advanceTo(nextCheckTime);
+        check.run();
+        assertTrue(firedReminders.isFired(eventId, minutes, fireTime));
+    }
+
+    @Test
+    public void scanListsNextReminders() {
+        long start = START_TIME + 2 * 7 * DAY;
+        SyntheticCalendar calendar = generate(start, 200);
+        // Mid-morning, while reminders are firing
+        long currentTime = start + 10 * 60 * 60 * 1000L;
+        clock.advanceTo(currentTime);
+
+        CalendarRepository repository = new CalendarRepository(context);
+        repository.scan();
+        CalendarRepository.Snapshot snapshot = repository.peek();
+
+        List<Long> expected = new ArrayList<>();
+        EventReminders reminders = calendar.remindersByEvent();
+        for (int i = 0; i < calendar.instanceCount(); i++) {
+            long eventId = calendar.instanceEventIdAt(i);
+            if (!calendar.isCalendarVisible(calendar.calendarIdOf(eventId))) {
+                continue;
+            }
+            for (int r = reminders.first(eventId); r != -1; r = reminders.next(r)) {
+                long fireTime = FireTimeIndex.fireTime(calendar.instanceBeginAt(i), reminders.minutesAt(r));
+                if (fireTime > currentTime) {
+                    expected.add(fireTime);
+                }
+            }
+        }
+        Collections.sort(expected);
+        expected = expected.subList(0, Math.min(CalendarRepository.SNAPSHOT_SIZE, expected.size()));
+
+        List<Long> listed = new ArrayList<>();
+        for (CalendarRepository.UpcomingReminder reminder : snapshot.reminders) {
+            listed.add(reminder.reminderTime);
+            assertEquals(SyntheticCalendar.title(reminder.eventId), reminder.title);
+            assertTrue("reminder of a hidden calendar listed",
+                    calendar.isCalendarVisible(calendar.calendarIdOf(reminder.eventId)));
+            assertEquals(FireTimeIndex.fireTime(reminder.eventStartTime, reminder.reminderMinutes),
+                    reminder.reminderTime);
+        }
+        assertEquals(expected, listed);
+    }
+
+    /**
+     * Runs the checks of a simulated day from start, and checks that every reminder
+     * due within it, or still within the late grace of its first check, was fired,
+     * and only those
+     */
+    private void checkDay(long start, boolean precise) {
+        SyntheticCalendar calendar = generate(start, 300);
+        FiredReminderStore firedReminders = FiredReminderStore.getInstance(context);
+        ReminderCheck check = new ReminderCheck(context, clock, firedReminders, new CalendarRepository(context));
+        long end = start + DAY;
+        long firedBefore = MonitorMetrics.REMINDERS_FIRED.get();
+        while (clock.currentTimeMillis() < end) {
+            long nextCheckTime = check.run();
+            assertTrue("check failed at " + clock.currentTimeMillis(), nextCheckTime != Long.MAX_VALUE);
+            clock.advanceTo(Math.max(clock.currentTimeMillis() + 1, nextCheckTime));
+        }
+
+        int due = 0;
+        EventReminders reminders = calendar.remindersByEvent();
+        for (int i = 0; i < calendar.instanceCount(); i++) {
+            long eventId = calendar.instanceEventIdAt(i);
+            if (!calendar.isCalendarVisible(calendar.calendarIdOf(eventId))) {
+                continue;
+            }
+            for (int r = reminders.first(eventId); r != -1; r = reminders.next(r)) {
+                int minutes = reminders.minutesAt(r);
+                long fireTime = FireTimeIndex.fireTime(calendar.instanceBeginAt(i), minutes);
+                if (fireTime >= start - ReminderPolicy.lateGrace(precise) && fireTime < end
+                        && minutes <= ReminderPolicy.MAX_REMINDER_MINUTES) {
+                    assertTrue("event " + eventId + ", " + minutes + " min before, not fired",
+                            firedReminders.isFired(eventId, minutes, fireTime));
+                    due++;
+                }
+            }
+        }
+        assertTrue("no reminder due", due > 0);
+        // Each fired once, and nothing else fired
+        assertEquals(due, MonitorMetrics.REMINDERS_FIRED.get() - firedBefore);
+    }
+
+    /**
+     * Replaces the provider's calendar by one of about instances instances over three
+     * days, the first of them before start, with a hidden calendar, and sets the clock
+     * to start. Returns the same calendar, generated locally.
+     */
+    private SyntheticCalendar generate(long start, int instances) {
+        clock = new VirtualClock(start);
+        AppClock.set(clock);
+        int eventsPerDay = Math.max(1, instances / 3);
+        Bundle extras = new Bundle();
+        extras.putLong("start", start - DAY);
+        extras.putInt("days", 3);
+        extras.putInt("calendars", 4);
+        extras.putInt("hiddenCalendars", 1);
+        extras.putInt("eventsPerDay", eventsPerDay);
+        extras.putFloat("recurringRatio", RECURRING_RATIO);
+        extras.putLong("seed", 3);
+        provider.call(SyntheticCalendarProvider.METHOD_GENERATE, null, extras);
+        return new SyntheticCalendar(new SyntheticCalendar.Workload(start - DAY)
+                .seed(3)
+                .days(3)
+                .calendars(4, 1)
+                .eventsPerDay(eventsPerDay)
+                .recurringRatio(RECURRING_RATIO));
+    }
+}
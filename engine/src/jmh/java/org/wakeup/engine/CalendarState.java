@@ -0,0 +1,62 @@
+package org.wakeup.engine;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Synthetic calendar shared by the benchmarks: about eventCount instances
+ * spread over up to 30 days, 20% of them recurring, with 1 to 2 alert
+ * reminders per event. The seed is fixed, so every run measures the same
+ * calendar.
+ */
+@State(Scope.Benchmark)
+public class CalendarState {
+    static final long NOW = 1_700_000_000_000L;
+    static final long WINDOW = 30 * 24 * 60 * 60 * 1000L;
+
+    @Param({"10", "100", "1000", "10000", "100000"})
+    public int eventCount;
+
+    // One entry per reminder occurrence
+    long[] eventIds;
+    long[] begins;
+    int[] minutes;
+    int reminderCount;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        int days = Math.min(30, eventCount);
+        SyntheticCalendar calendar = new SyntheticCalendar(new SyntheticCalendar.Workload(NOW)
+                .seed(42)
+                .days(days)
+                .eventsPerDay(eventCount / days));
+        EventReminders reminders = calendar.remindersByEvent();
+        int capacity = calendar.instanceCount() * 2;
+        eventIds = new long[capacity];
+        begins = new long[capacity];
+        minutes = new int[capacity];
+        reminderCount = 0;
+        for (int i = 0; i < calendar.instanceCount(); i++) {
+            long eventId = calendar.instanceEventIdAt(i);
+            for (int r = reminders.first(eventId); r != -1; r = reminders.next(r)) {
+                eventIds[reminderCount] = eventId;
+                begins[reminderCount] = calendar.instanceBeginAt(i);
+                minutes[reminderCount] = reminders.minutesAt(r);
+                reminderCount++;
+            }
+        }
+    }
+    /**
+     * Returns a new index holding every reminder occurrence of the calendar
+     */
+    FireTimeIndex newIndex() {
+        FireTimeIndex index = new FireTimeIndex();
+        for (int i = 0; i < reminderCount; i++) {
+            index.add(eventIds[i], begins[i], minutes[i]);
+        }
+        return index;
+    }
+}
@@ -0,0 +1,52 @@
+package org.wakeup.engine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Probes of the fired reminders ring, with the same geometry as
+ * FiredReminderStore (25 hourly buckets), filled with the calendar's first day
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class DedupBenchmark {
+    private static final long HOUR = 60 * 60 * 1000L;
+
+    private FiredReminderRing ring;
+    private FireTimeIndex index;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp(CalendarState calendar) {
+        ring = new FiredReminderRing(HOUR, 25);
+        index = calendar.newIndex();
+        int end = index.firstIndexAtOrAfter(CalendarState.NOW + 24 * HOUR);
+        // Mark every other reminder of the first day: probes hit and miss
+        for (int i = 0; i < end; i += 2) {
+            ring.markFired(index.eventIdAt(i), index.minutesAt(i), index.fireTimeAt(i));
+        }
+    }
+
+    @Benchmark
+    public boolean isFired() {
+        int i = next;
+        next = i + 1 < index.size() ? i + 1 : 0;
+        return ring.isFired(index.eventIdAt(i), index.minutesAt(i), index.fireTimeAt(i));
+    }
+
+    @Benchmark
+    public long reminderKey() {
+        int i = next;
+        next = i + 1 < index.size() ? i + 1 : 0;
+        return ReminderKey.of(index.eventIdAt(i), index.minutesAt(i), index.fireTimeAt(i));
+    }
+}
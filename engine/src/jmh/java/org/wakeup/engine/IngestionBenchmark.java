@@ -0,0 +1,33 @@
+package org.wakeup.engine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of a full rebuild, as done by ReminderIndex: grouping the reminders by
+ * event, then filling and sorting the fire-time index
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class IngestionBenchmark {
+
+    @Benchmark
+    public EventReminders groupReminders(CalendarState calendar) {
+        EventReminders reminders = new EventReminders();
+        for (int i = 0; i < calendar.reminderCount; i++) {
+            reminders.add(calendar.eventIds[i], calendar.minutes[i]);
+        }
+        return reminders;
+    }
+
+    @Benchmark
+    public long buildIndex(CalendarState calendar) {
+        FireTimeIndex index = calendar.newIndex();
+        // The index sorts lazily, on the first lookup
+        return index.nextFireTimeAfter(CalendarState.NOW);
+    }
+}
@@ -0,0 +1,47 @@
+package org.wakeup.engine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookups done by each reminder check on an already built index: the next
+ * fire time and the reminders due in the firing window
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class NextFireBenchmark {
+    private FireTimeIndex index;
+    private long time;
+
+    @Setup(Level.Trial)
+    public void setUp(CalendarState calendar) {
+        index = calendar.newIndex();
+        time = CalendarState.NOW;
+    }
+
+    @Benchmark
+    public long nextFireTime() {
+        // Walk through the month so lookups do not always hit the same slot
+        time = CalendarState.NOW + (time + 60_000L - CalendarState.NOW) % CalendarState.WINDOW;
+        return index.nextFireTimeAfter(time);
+    }
+
+    @Benchmark
+    public void dueReminders(Blackhole blackhole) {
+        time = CalendarState.NOW + (time + 60_000L - CalendarState.NOW) % CalendarState.WINDOW;
+        int end = index.firstIndexAtOrAfter(time + 1000);
+        for (int i = index.firstIndexAtOrAfter(time - 60_000L); i < end; i++) {
+            blackhole.consume(index.eventIdAt(i));
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package org.wakeup.engine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building the list of upcoming reminders shown by MainActivity and diffing it
+ * against the previous one, from the index (after each check) or by a top-K
+ * selection over the whole calendar (when no snapshot is usable)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class SnapshotBenchmark {
+    private static final int SNAPSHOT_SIZE = 3;
+
+    private FireTimeIndex index;
+    private final long[] previousEventIds = new long[SNAPSHOT_SIZE];
+    private final long[] previousReminderTimes = new long[SNAPSHOT_SIZE];
+    private int previousSize;
+    private final TopKReminders topReminders = new TopKReminders(SNAPSHOT_SIZE);
+    private long time;
+
+    @Setup(Level.Trial)
+    public void setUp(CalendarState calendar) {
+        index = calendar.newIndex();
+        time = CalendarState.NOW;
+    }
+
+    @Benchmark
+    public boolean diffFromIndex() {
+        time = CalendarState.NOW + (time + 60_000L - CalendarState.NOW) % CalendarState.WINDOW;
+        boolean changed = false;
+        int size = 0;
+        int end = index.size();
+        for (int i = index.firstIndexAtOrAfter(time + 1); i < end && size < SNAPSHOT_SIZE; i++, size++) {
+            changed |= remember(size, index.eventIdAt(i), index.fireTimeAt(i));
+        }
+        changed |= size != previousSize;
+        previousSize = size;
+        return changed;
+    }
+
+    @Benchmark
+    public boolean diffFromTopK(CalendarState calendar) {
+        time = CalendarState.NOW + (time + 60_000L - CalendarState.NOW) % CalendarState.WINDOW;
+        topReminders.clear();
+        for (int i = 0; i < calendar.reminderCount; i++) {
+            long reminderTime = FireTimeIndex.fireTime(calendar.begins[i], calendar.minutes[i]);
+            if (reminderTime > time) {
+                topReminders.offer(calendar.eventIds[i], calendar.begins[i], calendar.minutes[i], reminderTime);
+            }
+        }
+        topReminders.sort();
+        boolean changed = topReminders.size() != previousSize;
+        for (int i = 0; i < topReminders.size(); i++) {
+            changed |= remember(i, topReminders.eventIdAt(i), topReminders.reminderTimeAt(i));
+        }
+        previousSize = topReminders.size();
+        return changed;
+    }
+
+    private boolean remember(int position, long eventId, long reminderTime) {
+        boolean changed = previousEventIds[position] != eventId || previousReminderTimes[position] != reminderTime;
+        previousEventIds[position] = eventId;
+        previousReminderTimes[position] = reminderTime;
+        return changed;
+    }
+}
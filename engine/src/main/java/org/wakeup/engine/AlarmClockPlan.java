@@ -0,0 +1,181 @@
+package org.wakeup.engine;
+
+/**
+ * Alarm clocks wanted for the upcoming reminders of a FireTimeIndex, shared by
+ * ReminderAlarms and ReminderSimulator: one for the earliest not yet fired
+ * occurrence of each reminder firing within ALARM_HORIZON, at most MAX_ALARMS.
+ *
+ * plan() compares them with the registered alarms. The caller then cancels
+ * the cancelled ones, registers the wanted ones not isRegistered(), drop()s
+ * those it could not register, and commit()s. A request code covers a single
+ * occurrence at a time: registering it again replaces the previous alarm.
+ * An instance is not thread-safe.
+ */
+public class AlarmClockPlan {
+    private static final int MAX_ALARMS = ReminderPolicy.MAX_ALARMS;
+
+    /**
+     * Tells whether a reminder occurrence was already fired
+     */
+    public interface Fired {
+        boolean isFired(long eventId, int minutes, long fireTime);
+    }
+
+    // Registered alarms: request code and fire time
+    private final int[] requestCodes = new int[MAX_ALARMS];
+    private final long[] fireTimes = new long[MAX_ALARMS];
+    private int count;
+    // Wanted by the last plan(): positions in the index, request codes and fire times
+    private final int[] wanted = new int[MAX_ALARMS];
+    private final int[] wantedRequestCodes = new int[MAX_ALARMS];
+    private final long[] wantedFireTimes = new long[MAX_ALARMS];
+    private final boolean[] dropped = new boolean[MAX_ALARMS];
+    private int wantedCount;
+    // Registered alarms still pending but no longer wanted
+    private final int[] cancelled = new int[MAX_ALARMS];
+    private int cancelledCount;
+
+    /**
+     * Computes the alarms wanted at currentTime, and those to cancel
+     */
+    public void plan(FireTimeIndex index, long currentTime, Fired fired) {
+        wantedCount = 0;
+        int end = index.firstIndexAtOrAfter(currentTime + ReminderPolicy.ALARM_HORIZON + 1);
+        for (int i = index.firstIndexAtOrAfter(currentTime + 1); i < end && wantedCount < MAX_ALARMS; i++) {
+            int requestCode = ReminderPolicy.alarmRequestCode(index.eventIdAt(i), index.minutesAt(i));
+            if (indexOf(wantedRequestCodes, wantedCount, requestCode) >= 0
+                    || fired.isFired(index.eventIdAt(i), index.minutesAt(i), index.fireTimeAt(i))) {
+                continue;
+            }
+            wanted[wantedCount] = i;
+            wantedRequestCodes[wantedCount] = requestCode;
+            wantedFireTimes[wantedCount] = index.fireTimeAt(i);
+            dropped[wantedCount] = false;
+            wantedCount++;
+        }
+
+        // Alarms already due still fire: only pending ones are cancelled
+        cancelledCount = 0;
+        for (int i = 0; i < count; i++) {
+            if (fireTimes[i] > currentTime && !isWanted(requestCodes[i])) {
+                cancelled[cancelledCount++] = requestCodes[i];
+            }
+        }
+    }
+
+    public int wantedCount() {
+        return wantedCount;
+    }
+
+    /**
+     * Position in the planned index of the w-th wanted alarm's reminder
+     */
+    public int wantedAt(int w) {
+        return wanted[w];
+    }
+
+    public int wantedRequestCode(int w) {
+        return wantedRequestCodes[w];
+    }
+
+    public long wantedFireTime(int w) {
+        return wantedFireTimes[w];
+    }
+
+    /**
+     * Returns true if the w-th wanted alarm is already registered at its fire time
+     */
+    public boolean isRegistered(int w) {
+        int previous = indexOf(requestCodes, count, wantedRequestCodes[w]);
+        return previous >= 0 && fireTimes[previous] == wantedFireTimes[w];
+    }
+
+    /**
+     * Leaves the w-th wanted alarm out, e.g. when it could not be registered
+     */
+    public void drop(int w) {
+        dropped[w] = true;
+    }
+
+    /**
+     * Returns true if the last plan() wants an alarm of requestCode
+     */
+    public boolean isWanted(int requestCode) {
+        return indexOf(wantedRequestCodes, wantedCount, requestCode) >= 0;
+    }
+
+    public int cancelledCount() {
+        return cancelledCount;
+    }
+
+    public int cancelledAt(int i) {
+        return cancelled[i];
+    }
+
+    /**
+     * Records the wanted alarms not dropped as the registered ones. Returns true
+     * if they changed.
+     */
+    public boolean commit() {
+        boolean changed = cancelledCount > 0;
+        int kept = 0;
+        for (int w = 0; w < wantedCount; w++) {
+            if (dropped[w]) {
+                continue;
+            }
+            changed |= !isRegistered(w);
+            wanted[kept] = wanted[w];
+            wantedRequestCodes[kept] = wantedRequestCodes[w];
+            wantedFireTimes[kept] = wantedFireTimes[w];
+            kept++;
+        }
+        changed |= kept != count;
+        System.arraycopy(wantedRequestCodes, 0, requestCodes, 0, kept);
+        System.arraycopy(wantedFireTimes, 0, fireTimes, 0, kept);
+        count = kept;
+        wantedCount = kept;
+        cancelledCount = 0;
+        return changed;
+    }
+
+    /**
+     * Returns true if a registered alarm clock delivers this reminder occurrence
+     */
+    public boolean isScheduled(long eventId, int minutes, long fireTime) {
+        int i = indexOf(requestCodes, count, ReminderPolicy.alarmRequestCode(eventId, minutes));
+        return i >= 0 && fireTimes[i] == fireTime;
+    }
+
+    /**
+     * Number of registered alarms
+     */
+    public int count() {
+        return count;
+    }
+
+    public int requestCodeAt(int i) {
+        return requestCodes[i];
+    }
+
+    public long fireTimeAt(int i) {
+        return fireTimes[i];
+    }
+
+    /**
+     * Forgets the registered alarms, once cancelled
+     */
+    public void clear() {
+        count = 0;
+        wantedCount = 0;
+        cancelledCount = 0;
+    }
+
+    private static int indexOf(int[] values, int count, int value) {
+        for (int i = 0; i < count; i++) {
+            if (values[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,19 @@
+package org.wakeup.engine;
+
+/**
+ * Source of time for the reminder scheduling code, so that it can run
+ * against a virtual clock (see VirtualClock)
+ */
+public interface Clock {
+
+    /**
+     * Wall-clock time in milliseconds, as System.currentTimeMillis()
+     */
+    long currentTimeMillis();
+
+    /**
+     * Monotonic time in milliseconds since boot, including deep sleep,
+     * as SystemClock.elapsedRealtime()
+     */
+    long elapsedRealtime();
+}
@@ -0,0 +1,69 @@
+package org.wakeup.engine;
+
+import java.util.Arrays;
+
+/**
+ * Alert reminder minutes grouped by event ID, stored in flat primitive arrays.
+ *
+ * The reminders of an event form a linked list through the arrays:
+ * <pre>
+ * for (int i = reminders.first(eventId); i != -1; i = reminders.next(i)) {
+ *     int minutes = reminders.minutesAt(i);
+ * }
+ * </pre>
+ * clear() keeps the arrays so a single instance can be refilled on every check.
+ */
+public class EventReminders {
+    private final LongIntMap firstByEvent = new LongIntMap();
+    private int[] minutes = new int[16];
+    private int[] next = new int[16];
+    private int size;
+    private int maxMinutes;
+
+    public void clear() {
+        firstByEvent.clear();
+        size = 0;
+        maxMinutes = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void add(long eventId, int reminderMinutes) {
+        if (size == minutes.length) {
+            minutes = Arrays.copyOf(minutes, size * 2);
+            next = Arrays.copyOf(next, size * 2);
+        }
+        minutes[size] = reminderMinutes;
+        maxMinutes = Math.max(maxMinutes, reminderMinutes);
+        next[size] = firstByEvent.get(eventId, -1);
+        firstByEvent.put(eventId, size);
+        size++;
+    }
+
+    /**
+     * Returns the longest reminder lead time in minutes, 0 if there are no reminders
+     */
+    public int maxMinutes() {
+        return maxMinutes;
+    }
+
+    /**
+     * Returns the index of the first reminder of the event, or -1 if it has none
+     */
+    public int first(long eventId) {
+        return firstByEvent.get(eventId, -1);
+    }
+
+    /**
+     * Returns the index of the next reminder of the same event, or -1
+     */
+    public int next(int index) {
+        return next[index];
+    }
+
+    public int minutesAt(int index) {
+        return minutes[index];
+    }
+}
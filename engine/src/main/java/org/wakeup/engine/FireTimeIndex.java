@@ -0,0 +1,183 @@
+package org.wakeup.engine;
+
+import java.util.Arrays;
+
+/**
+ * Reminder occurrences sorted by fire time (event begin minus reminder minutes).
+ *
+ * "What fires between t1 and t2" is a binary search followed by a scan of the
+ * matching entries, instead of a provider query. Entries are stored in
+ * parallel primitive arrays; an instance is not thread-safe.
+ */
+public class FireTimeIndex {
+    private long[] fireTimes = new long[64];
+    private long[] eventIds = new long[64];
+    private long[] begins = new long[64];
+    private int[] minutes = new int[64];
+    private int size;
+    private boolean sorted = true;
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        size = 0;
+        sorted = true;
+    }
+
+    /**
+     * Adds a reminder occurrence. The index is re-sorted lazily on the next lookup.
+     */
+    public void add(long eventId, long begin, int reminderMinutes) {
+        add(eventId, begin, reminderMinutes, fireTime(begin, reminderMinutes));
+    }
+
+    /**
+     * Adds a reminder occurrence whose fire time was computed elsewhere
+     * (e.g. by the calendar provider for all-day events)
+     */
+    public void add(long eventId, long begin, int reminderMinutes, long fireTime) {
+        if (size == fireTimes.length) {
+            int capacity = size * 2;
+            fireTimes = Arrays.copyOf(fireTimes, capacity);
+            eventIds = Arrays.copyOf(eventIds, capacity);
+            begins = Arrays.copyOf(begins, capacity);
+            minutes = Arrays.copyOf(minutes, capacity);
+        }
+        if (size > 0 && fireTime < fireTimes[size - 1]) {
+            sorted = false;
+        }
+        fireTimes[size] = fireTime;
+        eventIds[size] = eventId;
+        begins[size] = begin;
+        minutes[size] = reminderMinutes;
+        size++;
+    }
+
+    /**
+     * Drops every entry firing before time
+     */
+    public void removeBefore(long time) {
+        int from = firstIndexAtOrAfter(time);
+        if (from == 0) {
+            return;
+        }
+        int remaining = size - from;
+        System.arraycopy(fireTimes, from, fireTimes, 0, remaining);
+        System.arraycopy(eventIds, from, eventIds, 0, remaining);
+        System.arraycopy(begins, from, begins, 0, remaining);
+        System.arraycopy(minutes, from, minutes, 0, remaining);
+        size = remaining;
+    }
+
+    /**
+     * Returns the index of the first entry firing at or after time, or size() if none
+     */
+    public int firstIndexAtOrAfter(long time) {
+        ensureSorted();
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (fireTimes[mid] < time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the first fire time strictly after time, or Long.MAX_VALUE if none
+     */
+    public long nextFireTimeAfter(long time) {
+        int index = firstIndexAtOrAfter(time + 1);
+        return index < size ? fireTimes[index] : Long.MAX_VALUE;
+    }
+
+    /**
+     * Returns true if the index holds the given occurrence
+     */
+    public boolean contains(long eventId, long fireTime) {
+        for (int i = firstIndexAtOrAfter(fireTime); i < size && fireTimes[i] == fireTime; i++) {
+            if (eventIds[i] == eventId) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public long fireTimeAt(int index) {
+        return fireTimes[index];
+    }
+
+    public long eventIdAt(int index) {
+        return eventIds[index];
+    }
+
+    public long beginAt(int index) {
+        return begins[index];
+    }
+
+    public int minutesAt(int index) {
+        return minutes[index];
+    }
+
+    public static long fireTime(long begin, int reminderMinutes) {
+        return begin - (reminderMinutes * 60 * 1000L);
+    }
+
+    private void ensureSorted() {
+        if (!sorted) {
+            sort(0, size - 1);
+            sorted = true;
+        }
+    }
+
+    /**
+     * Quicksort of the parallel arrays by fire time, without boxing
+     */
+    private void sort(int low, int high) {
+        while (low < high) {
+            long pivot = fireTimes[(low + high) >>> 1];
+            int i = low;
+            int j = high;
+            while (i <= j) {
+                while (fireTimes[i] < pivot) {
+                    i++;
+                }
+                while (fireTimes[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(i++, j--);
+                }
+            }
+            // Recurse into the smaller half to bound the stack depth
+            if (j - low < high - i) {
+                sort(low, j);
+                low = i;
+            } else {
+                sort(i, high);
+                high = j;
+            }
+        }
+    }
+
+    private void swap(int a, int b) {
+        long fireTime = fireTimes[a];
+        fireTimes[a] = fireTimes[b];
+        fireTimes[b] = fireTime;
+        long eventId = eventIds[a];
+        eventIds[a] = eventIds[b];
+        eventIds[b] = eventId;
+        long begin = begins[a];
+        begins[a] = begins[b];
+        begins[b] = begin;
+        int m = minutes[a];
+        minutes[a] = minutes[b];
+        minutes[b] = m;
+    }
+}
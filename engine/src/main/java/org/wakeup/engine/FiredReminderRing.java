@@ -0,0 +1,85 @@
+package org.wakeup.engine;
+
+import java.util.Arrays;
+
+/**
+ * Set of fired reminder occurrences, keyed on ReminderKey(eventId, minutes, fireTime)
+ * and stored in a ring of buckets indexed by fire time.
+ *
+ * A bucket is recycled when the ring wraps around, which expires its entries
+ * after bucketCount buckets without any cleanup pass. An instance is not
+ * thread-safe.
+ */
+public class FiredReminderRing {
+    private final long bucketDuration;
+    // Bucket number (fireTime / bucketDuration) each bucket currently holds, -1 if empty
+    private final long[] bucketEpochs;
+    private final LongHashSet[] buckets;
+
+    public FiredReminderRing(long bucketDuration, int bucketCount) {
+        this.bucketDuration = bucketDuration;
+        bucketEpochs = new long[bucketCount];
+        buckets = new LongHashSet[bucketCount];
+        for (int i = 0; i < bucketCount; i++) {
+            buckets[i] = new LongHashSet();
+        }
+        clear();
+    }
+
+    public int bucketCount() {
+        return buckets.length;
+    }
+
+    public void clear() {
+        Arrays.fill(bucketEpochs, -1);
+        for (LongHashSet bucket : buckets) {
+            bucket.clear();
+        }
+    }
+
+    /**
+     * Returns true if the reminder has already been fired
+     */
+    public boolean isFired(long eventId, int minutes, long fireTime) {
+        long epoch = fireTime / bucketDuration;
+        int index = bucketIndex(epoch);
+        return bucketEpochs[index] == epoch && buckets[index].contains(ReminderKey.of(eventId, minutes, fireTime));
+    }
+
+    /**
+     * Marks the reminder as fired. Returns false if it was already fired.
+     */
+    public boolean markFired(long eventId, int minutes, long fireTime) {
+        long epoch = fireTime / bucketDuration;
+        int index = bucketIndex(epoch);
+        if (bucketEpochs[index] != epoch) {
+            // Recycle the bucket: its entries are bucketCount buckets old
+            bucketEpochs[index] = epoch;
+            buckets[index].clear();
+        }
+        return buckets[index].add(ReminderKey.of(eventId, minutes, fireTime));
+    }
+
+    public long bucketEpochAt(int index) {
+        return bucketEpochs[index];
+    }
+
+    public long[] bucketKeysAt(int index) {
+        return buckets[index].toArray();
+    }
+
+    /**
+     * Restores a bucket read back from storage
+     */
+    public void restoreBucket(int index, long epoch, long[] keys) {
+        bucketEpochs[index] = epoch;
+        buckets[index].clear();
+        for (long key : keys) {
+            buckets[index].add(key);
+        }
+    }
+
+    private int bucketIndex(long epoch) {
+        return (int) Math.floorMod(epoch, (long) buckets.length);
+    }
+}
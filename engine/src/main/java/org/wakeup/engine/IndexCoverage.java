@@ -0,0 +1,61 @@
+package org.wakeup.engine;
+
+/**
+ * Range of event instances held by a reminder index, shared by ReminderIndex
+ * and ReminderSimulator.
+ *
+ * After reset(), the instances beginning from the retention start are
+ * indexed by slices: once the coverage runs low (refreshDeadline()), the next
+ * slice reaches INDEX_HORIZON plus the longest reminder lead time ahead.
+ */
+public class IndexCoverage {
+    private long indexedUntil; // Instances beginning up to this time are indexed
+    private long maxLeadTime; // Longest reminder lead time, in milliseconds
+
+    /**
+     * Starts an empty coverage before from, for reminders of up to maxReminderMinutes
+     */
+    public void reset(int maxReminderMinutes, long from) {
+        maxLeadTime = ReminderPolicy.maxLeadTime(maxReminderMinutes);
+        indexedUntil = from - 1;
+    }
+
+    /**
+     * Returns true if the next slice must be indexed at currentTime
+     */
+    public boolean needsExtension(long currentTime) {
+        return ReminderPolicy.needsExtension(indexedUntil, maxLeadTime, currentTime);
+    }
+
+    /**
+     * Begin of the next slice
+     */
+    public long extensionStart() {
+        return indexedUntil + 1;
+    }
+
+    /**
+     * End of the slice indexed at currentTime
+     */
+    public long extensionEnd(long currentTime) {
+        return ReminderPolicy.extensionEnd(maxLeadTime, currentTime);
+    }
+
+    /**
+     * Records that the instances beginning up to until are indexed
+     */
+    public void extendTo(long until) {
+        indexedUntil = until;
+    }
+
+    /**
+     * Time at which the next slice must be indexed, even if nothing fires before
+     */
+    public long refreshDeadline() {
+        return ReminderPolicy.refreshDeadline(indexedUntil, maxLeadTime);
+    }
+
+    public long maxLeadTime() {
+        return maxLeadTime;
+    }
+}
@@ -0,0 +1,128 @@
+package org.wakeup.engine;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * Open-addressing hash set of primitive longs.
+ *
+ * Unlike HashSet&lt;Long&gt;, adding and probing keys never allocates, and
+ * clear() keeps the table so the set can be reused from one check to the next.
+ */
+public class LongHashSet {
+    private static final long EMPTY = 0;
+
+    private long[] slots;
+    private int size;
+    private boolean hasEmptyKey; // Whether the sentinel value itself is in the set
+
+    public LongHashSet() {
+        this(16);
+    }
+
+    public LongHashSet(int expectedSize) {
+        int capacity = 16;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        slots = new long[capacity];
+    }
+
+    public int size() {
+        return size + (hasEmptyKey ? 1 : 0);
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public boolean contains(long key) {
+        if (key == EMPTY) {
+            return hasEmptyKey;
+        }
+        int mask = slots.length - 1;
+        for (int i = slot(key, mask); slots[i] != EMPTY; i = (i + 1) & mask) {
+            if (slots[i] == key) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Adds the key and returns true if it was not already present
+     */
+    public boolean add(long key) {
+        if (key == EMPTY) {
+            boolean added = !hasEmptyKey;
+            hasEmptyKey = true;
+            return added;
+        }
+        if ((size + 1) * 2 > slots.length) {
+            grow();
+        }
+        int mask = slots.length - 1;
+        int i = slot(key, mask);
+        while (slots[i] != EMPTY) {
+            if (slots[i] == key) {
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+        slots[i] = key;
+        size++;
+        return true;
+    }
+
+    public void clear() {
+        if (size > 0) {
+            Arrays.fill(slots, EMPTY);
+            size = 0;
+        }
+        hasEmptyKey = false;
+    }
+
+    /**
+     * Returns the keys in a new array, in no particular order
+     */
+    public long[] toArray() {
+        long[] result = new long[size()];
+        int n = 0;
+        if (hasEmptyKey) {
+            result[n++] = EMPTY;
+        }
+        for (long key : slots) {
+            if (key != EMPTY) {
+                result[n++] = key;
+            }
+        }
+        return result;
+    }
+
+    public void forEach(LongConsumer action) {
+        if (hasEmptyKey) {
+            action.accept(EMPTY);
+        }
+        for (long key : slots) {
+            if (key != EMPTY) {
+                action.accept(key);
+            }
+        }
+    }
+
+    static int slot(long key, int mask) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private void grow() {
+        long[] old = slots;
+        slots = new long[old.length * 2];
+        size = 0;
+        for (long key : old) {
+            if (key != EMPTY) {
+                add(key);
+            }
+        }
+    }
+}
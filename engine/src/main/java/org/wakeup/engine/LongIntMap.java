@@ -0,0 +1,105 @@
+package org.wakeup.engine;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash map from primitive longs to primitive ints.
+ *
+ * Lookups and updates never allocate, and clear() keeps the table so the
+ * map can be reused from one check to the next.
+ */
+public class LongIntMap {
+    private static final long EMPTY = 0;
+
+    private long[] keys;
+    private int[] values;
+    private int size;
+    private boolean hasEmptyKey; // Whether the sentinel value itself is a key
+    private int emptyKeyValue;
+
+    public LongIntMap() {
+        this(16);
+    }
+
+    public LongIntMap(int expectedSize) {
+        int capacity = 16;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        keys = new long[capacity];
+        values = new int[capacity];
+    }
+
+    public int size() {
+        return size + (hasEmptyKey ? 1 : 0);
+    }
+
+    public boolean containsKey(long key) {
+        if (key == EMPTY) {
+            return hasEmptyKey;
+        }
+        return keys[find(key)] != EMPTY;
+    }
+
+    /**
+     * Returns the value of the key, or defaultValue if the key is absent
+     */
+    public int get(long key, int defaultValue) {
+        if (key == EMPTY) {
+            return hasEmptyKey ? emptyKeyValue : defaultValue;
+        }
+        int i = find(key);
+        return keys[i] != EMPTY ? values[i] : defaultValue;
+    }
+
+    public void put(long key, int value) {
+        if (key == EMPTY) {
+            hasEmptyKey = true;
+            emptyKeyValue = value;
+            return;
+        }
+        int i = find(key);
+        if (keys[i] == EMPTY) {
+            if ((size + 1) * 2 > keys.length) {
+                grow();
+                i = find(key);
+            }
+            keys[i] = key;
+            size++;
+        }
+        values[i] = value;
+    }
+
+    public void clear() {
+        if (size > 0) {
+            Arrays.fill(keys, EMPTY);
+            size = 0;
+        }
+        hasEmptyKey = false;
+    }
+
+    /**
+     * Returns the slot holding the key, or the empty slot where it would be inserted
+     */
+    private int find(long key) {
+        int mask = keys.length - 1;
+        int i = LongHashSet.slot(key, mask);
+        while (keys[i] != EMPTY && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new int[oldKeys.length * 2];
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+}
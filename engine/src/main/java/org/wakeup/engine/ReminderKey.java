@@ -0,0 +1,22 @@
+package org.wakeup.engine;
+
+/**
+ * 64-bit identity of a reminder occurrence, used instead of
+ * "eventId_minutes_fireTime" strings as a dedup key.
+ */
+public class ReminderKey {
+
+    private ReminderKey() {
+    }
+
+    /**
+     * Packs (eventId, minutes, fireTime) into a well-distributed 64-bit key.
+     * The fire time is taken at second precision.
+     */
+    public static long of(long eventId, int minutes, long fireTime) {
+        long h = eventId * 0x9E3779B97F4A7C15L;
+        h = (h ^ (h >>> 32) ^ minutes) * 0xBF58476D1CE4E5B9L;
+        h = (h ^ (h >>> 29) ^ (fireTime / 1000)) * 0x94D049BB133111EBL;
+        return h ^ (h >>> 31);
+    }
+}
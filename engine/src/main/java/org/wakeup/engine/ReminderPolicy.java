@@ -0,0 +1,191 @@
+package org.wakeup.engine;
+
+/**
+ * Timing rules of reminder delivery, shared by CalendarMonitorService and
+ * ReminderSimulator: which reminders are due at a check, when the next check
+ * must run, how far ahead the index and the alarm clocks reach, and how often
+ * the service's liveness is checked. See also IndexCoverage and AlarmClockPlan.
+ */
+public class ReminderPolicy {
+
+    // A reminder is fired if it is due within this tolerance...
+    public static final long FIRE_EARLY_TOLERANCE = 1000;
+    // ...or if it was missed by less than this grace period
+    public static final long FIRE_LATE_GRACE = 60000;
+    // Without exact alarms, the system may deliver a check up to this late...
+    public static final long INEXACT_MAX_DEFERRAL = 10 * 60 * 1000L;
+    // ...so its reminders are still fired if missed by less than this
+    public static final long INEXACT_LATE_GRACE = INEXACT_MAX_DEFERRAL + FIRE_LATE_GRACE;
+    // When a reminder is delivered by an alarm clock or by the provider's EVENT_REMINDER
+    // broadcast, our own check only runs this long after it, in case it was not delivered
+    public static final long DELIVERY_BACKSTOP = 5000;
+
+    // Fire times are indexed this far ahead
+    public static final long INDEX_HORIZON = 24 * 60 * 60 * 1000L;
+    // The index is extended when it covers less than this ahead
+    public static final long MIN_COVERAGE = 60 * 60 * 1000L;
+    // The calendar UI allows reminders at most 4 weeks ahead; longer ones are ignored
+    public static final int MAX_REMINDER_MINUTES = 4 * 7 * 24 * 60;
+
+    // Reminders firing within this delay get an alarm clock
+    public static final long ALARM_HORIZON = 24 * 60 * 60 * 1000L;
+    // Stay well below the per-app alarm limit of AlarmManager
+    public static final int MAX_ALARMS = 50;
+
+    // The keep-alive check starts at this interval, and is back to it after a kill...
+    public static final long KEEP_ALIVE_MIN_INTERVAL = 5 * 60 * 1000L;
+    // ...and doubles while the service is found alive, up to this interval
+    public static final long KEEP_ALIVE_MAX_INTERVAL = 30 * 60 * 1000L;
+    // Keep-alive checks without a beat before the service is restarted
+    public static final int HEARTBEAT_MISSED_CHECKS = 2;
+
+    /**
+     * Tells whether something other than the check loop delivers a reminder
+     * (alarm clock, provider broadcast)
+     */
+    public interface Delivery {
+        boolean isDelivered(long eventId, int minutes, long fireTime);
+    }
+
+    private ReminderPolicy() {
+    }
+
+    /**
+     * Index of the first reminder to fire at a check running at currentTime,
+     * with exact alarms
+     */
+    public static int firstDue(FireTimeIndex index, long currentTime) {
+        return firstDue(index, currentTime, true);
+    }
+
+    /**
+     * Index of the first reminder to fire at a check running at currentTime, with
+     * exact alarms allowed (precise) or not
+     */
+    public static int firstDue(FireTimeIndex index, long currentTime, boolean precise) {
+        return index.firstIndexAtOrAfter(currentTime - lateGrace(precise));
+    }
+
+    /**
+     * How late a reminder may still be fired, with exact alarms allowed (precise) or not
+     */
+    public static long lateGrace(boolean precise) {
+        return precise ? FIRE_LATE_GRACE : INEXACT_LATE_GRACE;
+    }
+
+    /**
+     * Index after the last reminder to fire at a check running at currentTime
+     */
+    public static int endDue(FireTimeIndex index, long currentTime) {
+        return index.firstIndexAtOrAfter(currentTime + FIRE_EARLY_TOLERANCE + 1);
+    }
+
+    /**
+     * Returns true if a due reminder is left to its delivery (alarm clock, provider
+     * broadcast) at a check running at currentTime; the check only fires it once
+     * DELIVERY_BACKSTOP has passed
+     */
+    public static boolean awaitsDelivery(boolean delivered, long fireTime, long currentTime) {
+        return delivered && currentTime < fireTime + DELIVERY_BACKSTOP;
+    }
+
+    /**
+     * Adds to index the reminders of an event instance beginning at begin, those
+     * beyond MAX_REMINDER_MINUTES aside
+     */
+    public static void addInstance(FireTimeIndex index, EventReminders reminders, long eventId, long begin) {
+        for (int r = reminders.first(eventId); r != -1; r = reminders.next(r)) {
+            int minutes = reminders.minutesAt(r);
+            if (minutes <= MAX_REMINDER_MINUTES) {
+                index.add(eventId, begin, minutes);
+            }
+        }
+    }
+
+    /**
+     * Returns the time of the next check needed after a check running at currentTime:
+     * the next reminder's fire time, or DELIVERY_BACKSTOP after it if delivery delivers
+     * it. Due reminders the check left to their delivery (awaitsDelivery()) get their
+     * backstop too.
+     */
+    public static long nextCheckTime(FireTimeIndex index, long currentTime, Delivery delivery) {
+        long next = Long.MAX_VALUE;
+        int end = endDue(index, currentTime);
+        for (int i = firstDue(index, currentTime); i < end; i++) {
+            long fireTime = index.fireTimeAt(i);
+            if (awaitsDelivery(delivery.isDelivered(index.eventIdAt(i), index.minutesAt(i), fireTime),
+                    fireTime, currentTime)) {
+                next = Math.min(next, fireTime + DELIVERY_BACKSTOP);
+            }
+        }
+        int size = index.size();
+        for (int i = end; i < size && index.fireTimeAt(i) < next; i++) {
+            long fireTime = index.fireTimeAt(i);
+            boolean delivered = delivery.isDelivered(index.eventIdAt(i), index.minutesAt(i), fireTime);
+            next = Math.min(next, delivered ? fireTime + DELIVERY_BACKSTOP : fireTime);
+        }
+        return next;
+    }
+
+    /**
+     * Returns true if an index holding the instances beginning up to indexedUntil
+     * must be extended at currentTime, i.e. from its refreshDeadline() on
+     */
+    public static boolean needsExtension(long indexedUntil, long maxLeadTime, long currentTime) {
+        return currentTime >= refreshDeadline(indexedUntil, maxLeadTime);
+    }
+
+    /**
+     * End of the instances window read when the index is extended at currentTime
+     */
+    public static long extensionEnd(long maxLeadTime, long currentTime) {
+        return currentTime + INDEX_HORIZON + maxLeadTime;
+    }
+
+    /**
+     * Time at which an index holding the instances beginning up to indexedUntil
+     * must be extended, even if nothing fires before
+     */
+    public static long refreshDeadline(long indexedUntil, long maxLeadTime) {
+        return indexedUntil - maxLeadTime - MIN_COVERAGE;
+    }
+
+    /**
+     * Longest lead time to account for, in milliseconds, given the longest reminder
+     */
+    public static long maxLeadTime(int maxReminderMinutes) {
+        return Math.min(maxReminderMinutes, MAX_REMINDER_MINUTES) * 60 * 1000L;
+    }
+
+    /**
+     * Interval until the keep-alive check following one that found the service alive
+     * or not, interval being the current one
+     */
+    public static long nextKeepAliveInterval(long interval, boolean alive) {
+        return alive ? Math.min(interval * 2, KEEP_ALIVE_MAX_INTERVAL) : KEEP_ALIVE_MIN_INTERVAL;
+    }
+
+    /**
+     * How late a keep-alive check may run, to share a wakeup with another task
+     */
+    public static long keepAliveTolerance(long interval) {
+        return interval / 4;
+    }
+
+    /**
+     * Returns true if the service's last beat, age milliseconds old at a keep-alive
+     * check run after interval, is too old for a working service: each check asks
+     * for a beat, so a beat missing for two checks means a hung worker thread
+     */
+    public static boolean isHeartbeatStale(long age, long interval) {
+        return age > HEARTBEAT_MISSED_CHECKS * (interval + keepAliveTolerance(interval));
+    }
+
+    /**
+     * Unique request code of a reminder's alarm, combining eventId and minutes to
+     * avoid conflicts between multiple reminders of the same event
+     */
+    public static int alarmRequestCode(long eventId, int minutes) {
+        return (int) ((eventId % Integer.MAX_VALUE) * 1000 + (minutes % 1000));
+    }
+}
@@ -0,0 +1,142 @@
+package org.wakeup.engine;
+
+/**
+ * Keeps the K earliest reminders offered to it, in a bounded max-heap on the
+ * reminder time stored in parallel primitive arrays.
+ *
+ * Offering a reminder is O(log K) and memory stays O(K) however many
+ * reminders are streamed through it. An instance is not thread-safe.
+ */
+public class TopKReminders {
+    private final int capacity;
+    private final long[] reminderTimes;
+    private final long[] eventIds;
+    private final long[] begins;
+    private final int[] minutes;
+    private int size;
+
+    public TopKReminders(int capacity) {
+        this.capacity = capacity;
+        reminderTimes = new long[capacity];
+        eventIds = new long[capacity];
+        begins = new long[capacity];
+        minutes = new int[capacity];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isFull() {
+        return size == capacity;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Returns the latest reminder time kept, or Long.MAX_VALUE until the heap is full
+     */
+    public long maxReminderTime() {
+        return isFull() ? reminderTimes[0] : Long.MAX_VALUE;
+    }
+
+    /**
+     * Keeps the reminder if it is among the K earliest offered so far
+     */
+    public void offer(long eventId, long begin, int reminderMinutes, long reminderTime) {
+        if (size < capacity) {
+            set(size, eventId, begin, reminderMinutes, reminderTime);
+            siftUp(size++);
+        } else if (capacity > 0 && reminderTime < reminderTimes[0]) {
+            // Replace the latest reminder kept
+            set(0, eventId, begin, reminderMinutes, reminderTime);
+            siftDown(0);
+        }
+    }
+
+    /**
+     * Sorts the kept reminders by reminder time, in place. The heap must not
+     * be offered more reminders afterwards, until clear().
+     */
+    public void sort() {
+        // Heap sort: the max-heap yields the latest reminder first, stored at the end
+        for (int end = size - 1; end > 0; end--) {
+            swap(0, end);
+            siftDown(0, end);
+        }
+    }
+
+    public long reminderTimeAt(int index) {
+        return reminderTimes[index];
+    }
+
+    public long eventIdAt(int index) {
+        return eventIds[index];
+    }
+
+    public long beginAt(int index) {
+        return begins[index];
+    }
+
+    public int minutesAt(int index) {
+        return minutes[index];
+    }
+
+    private void set(int index, long eventId, long begin, int reminderMinutes, long reminderTime) {
+        reminderTimes[index] = reminderTime;
+        eventIds[index] = eventId;
+        begins[index] = begin;
+        minutes[index] = reminderMinutes;
+    }
+
+    private void siftUp(int index) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (reminderTimes[parent] >= reminderTimes[index]) {
+                return;
+            }
+            swap(parent, index);
+            index = parent;
+        }
+    }
+
+    private void siftDown(int index) {
+        siftDown(index, size);
+    }
+
+    private void siftDown(int index, int end) {
+        while (true) {
+            int largest = index;
+            int left = 2 * index + 1;
+            int right = left + 1;
+            if (left < end && reminderTimes[left] > reminderTimes[largest]) {
+                largest = left;
+            }
+            if (right < end && reminderTimes[right] > reminderTimes[largest]) {
+                largest = right;
+            }
+            if (largest == index) {
+                return;
+            }
+            swap(index, largest);
+            index = largest;
+        }
+    }
+
+    private void swap(int a, int b) {
+        long reminderTime = reminderTimes[a];
+        reminderTimes[a] = reminderTimes[b];
+        reminderTimes[b] = reminderTime;
+        long eventId = eventIds[a];
+        eventIds[a] = eventIds[b];
+        eventIds[b] = eventId;
+        long begin = begins[a];
+        begins[a] = begins[b];
+        begins[b] = begin;
+        int m = minutes[a];
+        minutes[a] = minutes[b];
+        minutes[b] = m;
+    }
+}
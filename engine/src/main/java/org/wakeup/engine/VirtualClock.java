@@ -0,0 +1,35 @@
+package org.wakeup.engine;
+
+/**
+ * Clock that only moves when told to, for simulations. Both times advance
+ * together; elapsedRealtime() starts at 0.
+ */
+public class VirtualClock implements Clock {
+    private final long startTime;
+    private long elapsed;
+
+    public VirtualClock(long startTime) {
+        this.startTime = startTime;
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return startTime + elapsed;
+    }
+
+    @Override
+    public long elapsedRealtime() {
+        return elapsed;
+    }
+
+    /**
+     * Moves the clock to time; it never goes backwards
+     */
+    public void advanceTo(long time) {
+        elapsed = Math.max(elapsed, time - startTime);
+    }
+
+    public void advanceBy(long duration) {
+        elapsed += Math.max(0, duration);
+    }
+}
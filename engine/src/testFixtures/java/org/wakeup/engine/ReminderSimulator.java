@@ -0,0 +1,396 @@
+package org.wakeup.engine;
+
+import java.util.Arrays;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * Replays a SyntheticCalendar through the scheduling rules of
+ * CalendarMonitorService on a VirtualClock, and reports what a day of
+ * monitoring costs: CPU wakeups, provider queries, alarm registrations and
+ * time spent holding the service WakeLock, plus the skew of every reminder.
+ *
+ * The service is modelled in computed index mode. Its decisions run the code
+ * it shares with the app: checks extend the index through IndexCoverage and
+ * ReminderPolicy.addInstance() as ReminderIndex does, fire the due reminders
+ * and program the next check with ReminderPolicy, and, with exact alarms
+ * allowed, plan alarm clocks with AlarmClockPlan as ReminderAlarms does. Only
+ * the provider and AlarmManager are simulated. ServiceKeepAliveReceiver's
+ * check runs through AlarmCoalescer: on its own wakeup at the end of its
+ * tolerance, or earlier within a check wakeup. Its interval widens as the
+ * service is never killed here. Without exact alarms (--inexact), AlarmManager
+ * delivers the check and keep-alive alarms late, by a seeded share of the
+ * window the system may take: 75% of their delay, at most
+ * ReminderPolicy.INEXACT_MAX_DEFERRAL. Provider queries and check durations
+ * are modelled, not measured: the app's queries are budgeted by QueryBudgetTest.
+ *
+ * ./gradlew :engine:simulate --args="--events 40 --seed 7 --recurring 0.5 --inexact --verbose"
+ */
+public class ReminderSimulator {
+    private static final long MINUTE = 60 * 1000L;
+    private static final long HOUR = 60 * MINUTE;
+    private static final long DAY = 24 * HOUR;
+    // Monday 2024-01-15 00:00 UTC
+    static final long START_TIME = 1705276800000L;
+
+    // Modelled cost of a check: fixed part, plus each provider query
+    private static final long CHECK_BASE_DURATION = 20;
+    private static final long QUERY_DURATION = 15;
+    // ReminderQuery reads the reminders by chunks of event IDs
+    private static final int EVENT_IDS_PER_QUERY = 500;
+    // Modelled time the CPU stays up after a broadcast alarm
+    private static final long RECEIVER_DURATION = 10;
+    // Share of its delay by which the system may defer an inexact alarm
+    private static final double INEXACT_WINDOW_RATIO = 0.75;
+    private static final long DEFERRAL_SEED = 1;
+
+    private static final int CHECK = 0;
+    private static final int ALARM_CLOCK = 1;
+    private static final int KEEP_ALIVE = 2;
+
+    private final SyntheticCalendar calendar;
+    private final boolean precise;
+    private final long duration;
+    private final boolean verbose;
+
+    private final VirtualClock clock = new VirtualClock(START_TIME);
+    private final Random deferrals = new Random(DEFERRAL_SEED);
+    private final PriorityQueue<long[]> alarms = new PriorityQueue<>((a, b) -> Long.compare(a[0], b[0]));
+    private final FireTimeIndex index = new FireTimeIndex();
+    private final IndexCoverage coverage = new IndexCoverage();
+    private final FiredReminderRing firedReminders = new FiredReminderRing(HOUR, 25);
+    private final AlarmClockPlan alarmClocks = new AlarmClockPlan();
+    // Last registration of each request code: an alarm clock event of an older one was replaced or cancelled
+    private final LongIntMap alarmGenerations = new LongIntMap();
+    private int alarmGeneration;
+    private long checkAlarmTime = Long.MAX_VALUE;
+    private boolean indexed;
+    private long keepAliveInterval = ReminderPolicy.KEEP_ALIVE_MIN_INTERVAL;
+    private long keepAliveDeadline;
+    private long keepAliveAlarmTime;
+
+    // Report
+    private long awakeUntil = Long.MIN_VALUE;
+    private int wakeups;
+    private int checks;
+    private int providerQueries;
+    private int alarmRegistrations;
+    private long wakeLockHeld;
+    private long[] skews = new long[64];
+    private int skewCount;
+    private int titleQueries;
+
+    /**
+     * Simulator monitoring calendar for duration from START_TIME; the calendar should
+     * start a day before, for the reminders firing early in the period
+     */
+    ReminderSimulator(SyntheticCalendar calendar, boolean precise, long duration, boolean verbose) {
+        this.calendar = calendar;
+        this.precise = precise;
+        this.duration = duration;
+        this.verbose = verbose;
+    }
+
+    public static void main(String[] args) {
+        int eventsPerDay = 20;
+        long seed = 1;
+        boolean precise = true;
+        int days = 1;
+        boolean verbose = false;
+        int calendars = 3;
+        double recurringRatio = 0.2;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--events" -> eventsPerDay = Integer.parseInt(args[++i]);
+                case "--seed" -> seed = Long.parseLong(args[++i]);
+                case "--days" -> days = Integer.parseInt(args[++i]);
+                case "--calendars" -> calendars = Integer.parseInt(args[++i]);
+                case "--recurring" -> recurringRatio = Double.parseDouble(args[++i]);
+                case "--inexact" -> precise = false;
+                case "--verbose" -> verbose = true;
+                default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        // From the day before (long reminders) to the day after the simulated period
+        SyntheticCalendar calendar = new SyntheticCalendar(new SyntheticCalendar.Workload(START_TIME - DAY)
+                .seed(seed)
+                .days(days + 2)
+                .calendars(calendars, 0)
+                .eventsPerDay(eventsPerDay)
+                .recurringRatio(recurringRatio));
+        ReminderSimulator simulator = new ReminderSimulator(calendar, precise, days * DAY, verbose);
+        simulator.run();
+        System.out.println("Synthetic calendar: " + eventsPerDay + " events/day, seed " + seed + ", "
+                + (precise ? "exact alarms allowed" : "no exact alarms") + ", " + days + " day(s)");
+        simulator.printReport();
+    }
+
+    void run() {
+        long end = START_TIME + duration;
+        // The service starts with the simulated period, the keep-alive alarm with it
+        schedule(START_TIME, CHECK, 0);
+        checkAlarmTime = START_TIME;
+        scheduleKeepAlive(START_TIME);
+        while (!alarms.isEmpty() && alarms.peek()[0] < end) {
+            long[] alarm = alarms.poll();
+            long time = alarm[0];
+            int kind = (int) alarm[1];
+            if (kind == CHECK && time != checkAlarmTime) {
+                // Replaced by a later registration
+                continue;
+            }
+            if (kind == KEEP_ALIVE && time != keepAliveAlarmTime) {
+                // Already run within a check
+                continue;
+            }
+            if (kind == ALARM_CLOCK && alarmGenerations.get(alarm[2], -1) != (int) alarm[3]) {
+                // Cancelled, or moved to another fire time
+                continue;
+            }
+            clock.advanceTo(time);
+            switch (kind) {
+                case CHECK -> {
+                    wakeUp(check());
+                    if (time >= keepAliveDeadline) {
+                        // AlarmCoalescer.dispatchDue() at the check
+                        keepAliveInterval = ReminderPolicy.nextKeepAliveInterval(keepAliveInterval, true);
+                        scheduleKeepAlive(time);
+                    }
+                }
+                case ALARM_CLOCK -> {
+                    wakeUp(RECEIVER_DURATION);
+                    deliverAlarmClock((int) alarm[2], time, time);
+                }
+                default -> {
+                    wakeUp(RECEIVER_DURATION);
+                    keepAliveInterval = ReminderPolicy.nextKeepAliveInterval(keepAliveInterval, true);
+                    scheduleKeepAlive(time);
+                }
+            }
+        }
+    }
+
+    /**
+     * ServiceKeepAliveReceiver.scheduleNextCheck() through AlarmCoalescer
+     */
+    private void scheduleKeepAlive(long time) {
+        keepAliveDeadline = time + keepAliveInterval;
+        keepAliveAlarmTime = deliveryTime(keepAliveDeadline + ReminderPolicy.keepAliveTolerance(keepAliveInterval),
+                time);
+        alarmRegistrations++;
+        schedule(keepAliveAlarmTime, KEEP_ALIVE, 0);
+    }
+
+    /**
+     * One run of CalendarMonitorService's check; returns its modelled duration
+     */
+    private long check() {
+        checks++;
+        long currentTime = clock.currentTimeMillis();
+        int queries = 0;
+        int titles = 0;
+
+        // ReminderIndex.refresh()
+        long from = currentTime - ReminderPolicy.INEXACT_LATE_GRACE;
+        if (!indexed) {
+            queries++; // Longest alert reminder
+            coverage.reset(calendar.maxReminderMinutes(), from);
+            indexed = true;
+        }
+        if (coverage.needsExtension(currentTime)) {
+            long until = coverage.extensionEnd(currentTime);
+            queries++; // Instances
+            queries += appendInstances(coverage.extensionStart(), until);
+            coverage.extendTo(until);
+        }
+        index.removeBefore(from);
+
+        int end = ReminderPolicy.endDue(index, currentTime);
+        for (int i = ReminderPolicy.firstDue(index, currentTime, precise); i < end; i++) {
+            long fireTime = index.fireTimeAt(i);
+            if (ReminderPolicy.awaitsDelivery(precise && alarmClocks.isScheduled(index.eventIdAt(i),
+                    index.minutesAt(i), fireTime), fireTime, currentTime)) {
+                continue;
+            }
+            if (firedReminders.markFired(index.eventIdAt(i), index.minutesAt(i), fireTime)) {
+                titles++;
+                fired(index.eventIdAt(i), index.minutesAt(i), fireTime, currentTime);
+            }
+        }
+
+        if (precise) {
+            updateAlarmClocks(currentTime);
+        } else {
+            alarmClocks.clear();
+        }
+
+        long next = Math.min(ReminderPolicy.nextCheckTime(index, currentTime,
+                        (eventId, reminderMinutes, fireTime) -> precise
+                                && alarmClocks.isScheduled(eventId, reminderMinutes, fireTime)),
+                coverage.refreshDeadline());
+        checkAlarmTime = deliveryTime(Math.max(currentTime, next), currentTime);
+        schedule(checkAlarmTime, CHECK, 0);
+        alarmRegistrations++;
+
+        providerQueries += queries + titles;
+        titleQueries += titles;
+        long checkDuration = CHECK_BASE_DURATION + (queries + titles) * QUERY_DURATION;
+        wakeLockHeld += checkDuration;
+        return checkDuration;
+    }
+
+    /**
+     * ReminderReceiver handling an alarm clock registered by ReminderAlarms
+     */
+    private void deliverAlarmClock(int requestCode, long fireTime, long currentTime) {
+        for (int i = index.firstIndexAtOrAfter(fireTime); i < index.size() && index.fireTimeAt(i) == fireTime; i++) {
+            if (ReminderPolicy.alarmRequestCode(index.eventIdAt(i), index.minutesAt(i)) == requestCode
+                    && firedReminders.markFired(index.eventIdAt(i), index.minutesAt(i), fireTime)) {
+                providerQueries++; // Title
+                titleQueries++;
+                fired(index.eventIdAt(i), index.minutesAt(i), fireTime, currentTime);
+            }
+        }
+    }
+
+    /**
+     * ReminderIndex's instances query from begin to end, then the reminders of their
+     * events; returns the number of Reminders queries
+     */
+    private int appendInstances(long begin, long end) {
+        EventReminders reminders = calendar.remindersByEvent();
+        LongHashSet eventIds = new LongHashSet();
+        for (int i = calendar.firstInstanceAtOrAfter(begin);
+                i < calendar.instanceCount() && calendar.instanceBeginAt(i) <= end; i++) {
+            long eventId = calendar.instanceEventIdAt(i);
+            // The Instances table only holds the events of visible calendars
+            if (calendar.isCalendarVisible(calendar.calendarIdOf(eventId))) {
+                eventIds.add(eventId);
+                ReminderPolicy.addInstance(index, reminders, eventId, calendar.instanceBeginAt(i));
+            }
+        }
+        return (eventIds.size() + EVENT_IDS_PER_QUERY - 1) / EVENT_IDS_PER_QUERY;
+    }
+
+    /**
+     * ReminderAlarms.update(), AlarmManager aside
+     */
+    private void updateAlarmClocks(long currentTime) {
+        alarmClocks.plan(index, currentTime, firedReminders::isFired);
+        for (int i = 0; i < alarmClocks.cancelledCount(); i++) {
+            alarmGenerations.put(alarmClocks.cancelledAt(i), ++alarmGeneration);
+        }
+        for (int w = 0; w < alarmClocks.wantedCount(); w++) {
+            if (!alarmClocks.isRegistered(w)) {
+                alarmRegistrations++;
+                alarmGenerations.put(alarmClocks.wantedRequestCode(w), ++alarmGeneration);
+                alarms.add(new long[] {alarmClocks.wantedFireTime(w), ALARM_CLOCK, alarmClocks.wantedRequestCode(w),
+                        alarmGeneration});
+            }
+        }
+        alarmClocks.commit();
+    }
+
+    private void fired(long eventId, int reminderMinutes, long fireTime, long currentTime) {
+        if (fireTime < START_TIME) {
+            // Due before the simulated period, fired by its first check
+            return;
+        }
+        if (verbose) {
+            System.out.println("Event " + eventId + ", " + reminderMinutes + " min before: fired at +"
+                    + ((currentTime - START_TIME) / MINUTE) + " min, skew " + (currentTime - fireTime) + " ms");
+        }
+        if (skewCount == skews.length) {
+            skews = Arrays.copyOf(skews, skewCount * 2);
+        }
+        skews[skewCount++] = currentTime - fireTime;
+    }
+
+    /**
+     * Time at which AlarmManager delivers an alarm registered at currentTime for
+     * triggerAt: on time with exact alarms, else within the window of an inexact one
+     */
+    private long deliveryTime(long triggerAt, long currentTime) {
+        if (precise) {
+            return triggerAt;
+        }
+        long window = Math.min((long) ((triggerAt - currentTime) * INEXACT_WINDOW_RATIO),
+                ReminderPolicy.INEXACT_MAX_DEFERRAL);
+        return window > 0 ? triggerAt + (long) (deferrals.nextDouble() * window) : triggerAt;
+    }
+
+    /**
+     * Counts a wakeup unless the CPU is still up from the previous one
+     */
+    private void wakeUp(long awakeDuration) {
+        long currentTime = clock.currentTimeMillis();
+        if (currentTime > awakeUntil) {
+            wakeups++;
+        }
+        awakeUntil = Math.max(awakeUntil, currentTime + awakeDuration);
+    }
+
+    private void schedule(long time, int kind, long requestCode) {
+        alarms.add(new long[] {time, kind, requestCode});
+    }
+
+    int wakeups() {
+        return wakeups;
+    }
+
+    int firedCount() {
+        return skewCount;
+    }
+
+    /**
+     * Largest delay between a reminder's fire time and its delivery
+     */
+    long maxSkew() {
+        long max = 0;
+        for (int i = 0; i < skewCount; i++) {
+            max = Math.max(max, skews[i]);
+        }
+        return max;
+    }
+
+    /**
+     * Number of reminders of visible calendars firing within the simulated period
+     */
+    int dueCount() {
+        EventReminders reminders = calendar.remindersByEvent();
+        int due = 0;
+        long end = START_TIME + duration;
+        for (int i = 0; i < calendar.instanceCount(); i++) {
+            long eventId = calendar.instanceEventIdAt(i);
+            if (!calendar.isCalendarVisible(calendar.calendarIdOf(eventId))) {
+                continue;
+            }
+            for (int r = reminders.first(eventId); r != -1; r = reminders.next(r)) {
+                long fireTime = FireTimeIndex.fireTime(calendar.instanceBeginAt(i), reminders.minutesAt(r));
+                if (fireTime >= START_TIME && fireTime < end) {
+                    due++;
+                }
+            }
+        }
+        return due;
+    }
+
+    void printReport() {
+        // Reminders due within the simulated period
+        int due = dueCount();
+        long[] sorted = Arrays.copyOf(skews, skewCount);
+        Arrays.sort(sorted);
+
+        System.out.println("Wakeups: " + wakeups);
+        System.out.println("Checks: " + checks);
+        System.out.println("Provider queries: " + providerQueries + " (" + titleQueries + " titles)");
+        System.out.println("Alarm registrations: " + alarmRegistrations);
+        System.out.println("WakeLock held: " + wakeLockHeld + " ms");
+        System.out.println("Reminders fired: " + skewCount + " of " + due + " due");
+        if (skewCount > 0) {
+            System.out.println("Fire skew: min " + sorted[0] + " ms, median " + sorted[skewCount / 2]
+                    + " ms, max " + sorted[skewCount - 1] + " ms");
+        }
+    }
+}
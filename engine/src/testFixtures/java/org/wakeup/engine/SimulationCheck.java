@@ -0,0 +1,66 @@
+package org.wakeup.engine;
+
+/**
+ * Regression check of the scheduling rules, run by ./gradlew :engine:checkSimulation
+ * (part of check): a day of ReminderSimulator, with and without exact alarms,
+ * on calendars of about 10, 1k and 50k instances. Every due reminder must fire,
+ * with at most WAKEUPS_PER_REMINDER wakeups per fired reminder plus the
+ * keep-alive checks. With exact alarms, a reminder may fire at most
+ * FIRE_LATE_GRACE late; without, its check alarm being deferred, at most
+ * INEXACT_MAX_DEFERRAL late.
+ *
+ * Provider queries are not checked here: the simulator models them. The app's
+ * query budget is checked on the real query classes by QueryBudgetTest.
+ */
+public class SimulationCheck {
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+    private static final int[] INSTANCES = { 10, 1_000, 50_000 };
+    // Reminders sharing a fire time share a wakeup; a fired reminder costs at most its
+    // check and its alarm clock, the index extensions and keep-alive checks aside
+    private static final int WAKEUPS_PER_REMINDER = 2;
+    private static final int FIXED_WAKEUPS = (int) (DAY / ReminderPolicy.KEEP_ALIVE_MIN_INTERVAL) + 4;
+
+    private SimulationCheck() {
+    }
+
+    public static void main(String[] args) {
+        boolean failed = false;
+        for (int instances : INSTANCES) {
+            for (boolean precise : new boolean[] { true, false }) {
+                ReminderSimulator simulator = new ReminderSimulator(calendar(instances), precise, DAY, false);
+                simulator.run();
+                int due = simulator.dueCount();
+                int maxWakeups = FIXED_WAKEUPS + WAKEUPS_PER_REMINDER * simulator.firedCount();
+                System.out.println("About " + instances + " instances, " + (precise ? "exact" : "no exact")
+                        + " alarms: " + simulator.firedCount() + " of " + due + " reminders fired, max skew "
+                        + simulator.maxSkew() + " ms, " + simulator.wakeups() + " wakeups (budget " + maxWakeups + ")");
+                if (simulator.firedCount() != due) {
+                    System.out.println("  FAILED: due reminders not fired");
+                    failed = true;
+                }
+                long maxSkew = precise ? ReminderPolicy.FIRE_LATE_GRACE : ReminderPolicy.INEXACT_MAX_DEFERRAL;
+                if (simulator.maxSkew() > maxSkew) {
+                    System.out.println("  FAILED: reminder fired late");
+                    failed = true;
+                }
+                if (simulator.wakeups() > maxWakeups) {
+                    System.out.println("  FAILED: wakeup budget exceeded");
+                    failed = true;
+                }
+            }
+        }
+        if (failed) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Calendar of about instances instances: the simulated day, with a day on each side
+     */
+    private static SyntheticCalendar calendar(int instances) {
+        return new SyntheticCalendar(new SyntheticCalendar.Workload(ReminderSimulator.START_TIME - DAY)
+                .seed(1)
+                .days(3)
+                .eventsPerDay(Math.max(1, instances / 3)));
+    }
+}
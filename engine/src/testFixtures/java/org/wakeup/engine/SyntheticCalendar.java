@@ -0,0 +1,262 @@
+package org.wakeup.engine;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Generated calendar data for stress tests, benchmarks and simulations:
+ * calendars, events (single or recurring), their instances over a window
+ * and their alert reminders.
+ *
+ * The content only depends on the Workload, so a given seed always yields
+ * the same calendar. Instances are expanded once and sorted by begin, so
+ * range lookups are a binary search. An instance is immutable.
+ */
+public class SyntheticCalendar {
+    private static final long MINUTE = 60 * 1000L;
+    private static final long HOUR = 60 * MINUTE;
+    private static final long DAY = 24 * HOUR;
+    private static final int[] DURATIONS_MINUTES = {15, 30, 30, 60, 60, 90, 120};
+
+    /**
+     * Shape of a generated calendar
+     */
+    public static class Workload {
+        long seed = 1;
+        long start;
+        int days = 30;
+        int calendars = 3;
+        int hiddenCalendars;
+        int eventsPerDay = 20;
+        double recurringRatio = 0.2;
+        int[] reminderMinutes = {0, 5, 10, 15, 30, 60, 1440};
+        int maxRemindersPerEvent = 2;
+
+        public Workload(long start) {
+            this.start = start;
+        }
+
+        public Workload seed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        /**
+         * Length of the window holding instances, from start
+         */
+        public Workload days(int days) {
+            this.days = days;
+            return this;
+        }
+
+        /**
+         * Number of calendars, of which hidden are not visible
+         */
+        public Workload calendars(int calendars, int hidden) {
+            this.calendars = Math.max(1, calendars);
+            this.hiddenCalendars = Math.min(hidden, this.calendars - 1);
+            return this;
+        }
+
+        /**
+         * Average number of instances per day, all calendars included
+         */
+        public Workload eventsPerDay(int eventsPerDay) {
+            this.eventsPerDay = eventsPerDay;
+            return this;
+        }
+
+        /**
+         * Share of the instances coming from recurring events (half daily, half weekly)
+         */
+        public Workload recurringRatio(double recurringRatio) {
+            this.recurringRatio = Math.max(0, Math.min(1, recurringRatio));
+            return this;
+        }
+
+        /**
+         * Lead times picked from for reminders, and the number of reminders per event (1 to max)
+         */
+        public Workload reminders(int[] minutes, int maxPerEvent) {
+            this.reminderMinutes = minutes.clone();
+            this.maxRemindersPerEvent = Math.max(1, Math.min(maxPerEvent, minutes.length));
+            return this;
+        }
+    }
+
+    private final Workload workload;
+    // Events; event IDs are index + 1
+    private final long[] eventCalendarIds;
+    private final int eventCount;
+    // Reminders, grouped by event
+    private final long[] reminderEventIds;
+    private final int[] reminderMinutes;
+    private final int reminderCount;
+    private final EventReminders remindersByEvent = new EventReminders();
+    // Instances, sorted by begin
+    private final long[] instanceEventIds;
+    private final long[] instanceBegins;
+    private final long[] instanceEnds;
+    private final int instanceCount;
+
+    public SyntheticCalendar(Workload workload) {
+        this.workload = workload;
+        Random random = new Random(workload.seed);
+        int dailySeries = (int) Math.round(workload.eventsPerDay * workload.recurringRatio / 2);
+        int weeklySeries = (int) Math.round(workload.eventsPerDay * workload.recurringRatio / 2 * 7);
+        int singleEvents = (int) Math.round(workload.eventsPerDay * (1 - workload.recurringRatio) * workload.days);
+        eventCount = dailySeries + weeklySeries + singleEvents;
+        eventCalendarIds = new long[eventCount];
+        int maxInstances = singleEvents + (dailySeries + weeklySeries) * (workload.days + 1);
+        long[] eventIds = new long[maxInstances];
+        long[] begins = new long[maxInstances];
+        long[] ends = new long[maxInstances];
+        long[] remindersOfEvents = new long[eventCount * workload.maxRemindersPerEvent];
+        int[] minutesOfEvents = new int[eventCount * workload.maxRemindersPerEvent];
+        int instances = 0;
+        int reminders = 0;
+
+        for (int event = 0; event < eventCount; event++) {
+            long eventId = event + 1;
+            eventCalendarIds[event] = 1 + random.nextInt(workload.calendars);
+            long period = event < dailySeries ? DAY : event < dailySeries + weeklySeries ? 7 * DAY : 0;
+            // Working hours on a quarter-hour grid; a series starts within its first period
+            long firstDay = period == 0 ? random.nextInt(workload.days) : random.nextInt((int) (period / DAY));
+            long begin = workload.start + firstDay * DAY + 8 * HOUR + random.nextInt(11 * 4) * 15 * MINUTE;
+            long duration = DURATIONS_MINUTES[random.nextInt(DURATIONS_MINUTES.length)] * MINUTE;
+            long windowEnd = workload.start + workload.days * DAY;
+            do {
+                eventIds[instances] = eventId;
+                begins[instances] = begin;
+                ends[instances] = begin + duration;
+                instances++;
+                begin += period;
+            } while (period > 0 && begin < windowEnd);
+
+            // Distinct lead times, as the calendar UI allows
+            int count = 1 + random.nextInt(workload.maxRemindersPerEvent);
+            int first = random.nextInt(workload.reminderMinutes.length);
+            for (int r = 0; r < count; r++) {
+                int minutes = workload.reminderMinutes[(first + r) % workload.reminderMinutes.length];
+                remindersOfEvents[reminders] = eventId;
+                minutesOfEvents[reminders] = minutes;
+                remindersByEvent.add(eventId, minutes);
+                reminders++;
+            }
+        }
+
+        reminderEventIds = Arrays.copyOf(remindersOfEvents, reminders);
+        reminderMinutes = Arrays.copyOf(minutesOfEvents, reminders);
+        reminderCount = reminders;
+
+        // Sort the instances by begin through a permutation of their indices
+        instanceCount = instances;
+        Integer[] order = new Integer[instances];
+        for (int i = 0; i < instances; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(begins[a], begins[b]));
+        instanceEventIds = new long[instances];
+        instanceBegins = new long[instances];
+        instanceEnds = new long[instances];
+        for (int i = 0; i < instances; i++) {
+            instanceEventIds[i] = eventIds[order[i]];
+            instanceBegins[i] = begins[order[i]];
+            instanceEnds[i] = ends[order[i]];
+        }
+    }
+
+    public long start() {
+        return workload.start;
+    }
+
+    public long end() {
+        return workload.start + workload.days * DAY;
+    }
+
+    public int calendarCount() {
+        return workload.calendars;
+    }
+
+    /**
+     * Calendar IDs are 1 to calendarCount(); the last hidden ones are not visible
+     */
+    public boolean isCalendarVisible(long calendarId) {
+        return calendarId <= workload.calendars - workload.hiddenCalendars;
+    }
+
+    public static String calendarName(long calendarId) {
+        return "Synthetic " + calendarId;
+    }
+
+    /**
+     * Event IDs are 1 to eventCount()
+     */
+    public int eventCount() {
+        return eventCount;
+    }
+
+    public long calendarIdOf(long eventId) {
+        return eventCalendarIds[(int) (eventId - 1)];
+    }
+
+    public static String title(long eventId) {
+        return "Event " + eventId;
+    }
+
+    public int reminderCount() {
+        return reminderCount;
+    }
+
+    public long reminderEventIdAt(int index) {
+        return reminderEventIds[index];
+    }
+
+    public int reminderMinutesAt(int index) {
+        return reminderMinutes[index];
+    }
+
+    /**
+     * Reminders of each event; see EventReminders for the iteration
+     */
+    public EventReminders remindersByEvent() {
+        return remindersByEvent;
+    }
+
+    public int maxReminderMinutes() {
+        return remindersByEvent.maxMinutes();
+    }
+
+    public int instanceCount() {
+        return instanceCount;
+    }
+
+    /**
+     * Returns the index of the first instance beginning at or after time, or instanceCount() if none
+     */
+    public int firstInstanceAtOrAfter(long time) {
+        int low = 0;
+        int high = instanceCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (instanceBegins[mid] < time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    public long instanceEventIdAt(int index) {
+        return instanceEventIds[index];
+    }
+
+    public long instanceBeginAt(int index) {
+        return instanceBegins[index];
+    }
+
+    public long instanceEndAt(int index) {
+        return instanceEnds[index];
+    }
+}